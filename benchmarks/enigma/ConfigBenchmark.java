@@ -0,0 +1,67 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/** Benchmarks of building a machine from its description: parsing a text
+ *  configuration, as Main.readConfig does, and loading the equivalent
+ *  precompiled machine image.
+ *  @author Roland Li
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConfigBenchmark {
+
+    /** Size of the machine's alphabet. */
+    @Param({"26", "64", "256"})
+    public int alphabetSize;
+
+    /** Number of rotor slots (see Fixtures.config). */
+    @Param({"3", "5", "8"})
+    public int rotorCount;
+
+    /** Generate the configuration and write its image. */
+    @Setup
+    public void setUp() throws IOException {
+        _config = Fixtures.config(alphabetSize, rotorCount).toCharArray();
+        _image = File.createTempFile("enigma", ".img");
+        MachineImage.write(new ConfigParser(_config).parse(),
+                           _image.getPath());
+    }
+
+    /** Remove the image. */
+    @TearDown
+    public void tearDown() {
+        _image.delete();
+    }
+
+    /** Return the machine described by the text configuration. */
+    @Benchmark
+    public Machine parseConfig() {
+        return new ConfigParser(_config).parse();
+    }
+
+    /** Return the machine loaded from its image. */
+    @Benchmark
+    public Machine loadImage() {
+        return MachineImage.load(_image.getPath());
+    }
+
+    /** Text of the configuration. */
+    private char[] _config;
+
+    /** File holding the machine's image. */
+    private File _image;
+}
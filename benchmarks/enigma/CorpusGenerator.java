@@ -0,0 +1,215 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import static enigma.EnigmaException.*;
+
+/** Generates large input files, in the format read by Main, for
+ *  end-to-end benchmarks.  Usage:
+ *      java enigma.CorpusGenerator CONFIG OUTPUT MEGABYTES [SEED]
+ *  writes about MEGABYTES megabytes of messages for the machine described
+ *  by CONFIG to OUTPUT.  Most of the corpus is many short messages, each
+ *  with its own setting line, a random choice of rotors from CONFIG, and
+ *  a random plugboard; the rest is GIANT_LINES single-line messages of
+ *  GIANT_SHARE of the corpus between them.
+ *  @author Roland Li
+ */
+class CorpusGenerator {
+
+    /** Generate a corpus as described by ARGS (see the class comment). */
+    public static void main(String... args) {
+        try {
+            if (args.length < 3 || args.length > 4) {
+                throw error("Usage: java enigma.CorpusGenerator CONFIG "
+                            + "OUTPUT MEGABYTES [SEED]");
+            }
+            long size = (long) (Double.parseDouble(args[2]) * (1 << 20));
+            long seed = args.length > 3 ? Long.parseLong(args[3]) : 0;
+            Machine machine = new ConfigParser(
+                new String(Files.readAllBytes(Paths.get(args[0])))
+                .toCharArray()).parse();
+            try (Writer out = Files.newBufferedWriter(
+                     Paths.get(args[1]), StandardCharsets.UTF_8)) {
+                new CorpusGenerator(machine, new Random(seed))
+                    .generate(out, size);
+            }
+        } catch (IOException | EnigmaException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** A generator of messages for MACHINE, choosing everything with
+     *  RANDOM. */
+    CorpusGenerator(Machine machine, Random random) {
+        _alphabet = machine.alphabet();
+        _numRotors = machine.numRotors();
+        _pawls = machine.numPawls();
+        _random = random;
+        for (Rotor rotor : machine.allRotors()) {
+            if (rotor.reflecting()) {
+                _reflectors.add(rotor.name().toUpperCase());
+            } else if (rotor.rotates()) {
+                _moving.add(rotor.name().toUpperCase());
+            } else {
+                _fixed.add(rotor.name().toUpperCase());
+            }
+        }
+        if (_reflectors.isEmpty()
+            || _fixed.size() < _numRotors - _pawls - 1
+            || _moving.size() < _pawls) {
+            throw error("configuration has too few rotors of some kind");
+        }
+    }
+
+    /** Write about SIZE characters of messages to OUT. */
+    void generate(Writer out, long size) throws IOException {
+        long giant = (long) (size * GIANT_SHARE) / GIANT_LINES;
+        long[] giantAt = new long[GIANT_LINES];
+        for (int i = 0; i < GIANT_LINES; i += 1) {
+            giantAt[i] = (long) (_random.nextDouble() * size);
+        }
+        Arrays.sort(giantAt);
+        long written = 0;
+        int next = 0;
+        while (written < size) {
+            written += settingLine(out);
+            if (next < GIANT_LINES && written >= giantAt[next]) {
+                written += messageLine(out, giant);
+                next += 1;
+            } else {
+                written += shortMessages(out);
+            }
+        }
+    }
+
+    /** Write one short message with its setting line to OUT, as a
+     *  request for Server (see LoadGenerator).  Return its length. */
+    long request(Writer out) throws IOException {
+        return settingLine(out) + shortMessages(out);
+    }
+
+    /** Write a few short message lines to OUT, returning their total
+     *  length. */
+    private long shortMessages(Writer out) throws IOException {
+        long written = 0;
+        int lines = 1 + _random.nextInt(MAX_SHORT_LINES);
+        for (int i = 0; i < lines; i += 1) {
+            written += messageLine(out, MIN_SHORT_LENGTH
+                + _random.nextInt(MAX_SHORT_LENGTH - MIN_SHORT_LENGTH + 1));
+        }
+        return written;
+    }
+
+    /** Write a setting line with random rotors, settings and plugboard to
+     *  OUT, returning its length. */
+    private int settingLine(Writer out) throws IOException {
+        StringBuilder line = new StringBuilder("*");
+        line.append(' ').append(pick(_reflectors, 1).get(0));
+        for (String name : pick(_fixed, _numRotors - _pawls - 1)) {
+            line.append(' ').append(name);
+        }
+        for (String name : pick(_moving, _pawls)) {
+            line.append(' ').append(name);
+        }
+        line.append(' ');
+        for (int i = 1; i < _numRotors; i += 1) {
+            line.append(randomChar());
+        }
+        int size = _alphabet.size();
+        int[] order = new int[size];
+        for (int i = 0; i < size; i += 1) {
+            order[i] = i;
+        }
+        int pairs = _random.nextInt(Math.min(MAX_PLUGS, size / 2) + 1);
+        for (int i = 0; i < 2 * pairs; i += 1) {
+            int k = i + _random.nextInt(size - i);
+            int t = order[i];
+            order[i] = order[k];
+            order[k] = t;
+        }
+        for (int i = 0; i < 2 * pairs; i += 2) {
+            line.append(" (").append(_alphabet.toChar(order[i]))
+                .append(_alphabet.toChar(order[i + 1])).append(')');
+        }
+        line.append('\n');
+        out.write(line.toString());
+        return line.length();
+    }
+
+    /** Write a message line of LEN characters to OUT, returning LEN + 1
+     *  (for its terminator).  The line is mostly alphabet characters in
+     *  either case, with occasional spaces. */
+    private long messageLine(Writer out, long len) throws IOException {
+        char[] buf = new char[(int) Math.min(len, BUFFER_SIZE)];
+        for (long k = 0; k < len; k += buf.length) {
+            int n = (int) Math.min(buf.length, len - k);
+            for (int i = 0; i < n; i += 1) {
+                int r = _random.nextInt(SPACE_ODDS);
+                if (r == 0) {
+                    buf[i] = ' ';
+                } else {
+                    char c = randomChar();
+                    buf[i] = r % 2 == 0 ? Character.toLowerCase(c) : c;
+                }
+            }
+            out.write(buf, 0, n);
+        }
+        out.write('\n');
+        return len + 1;
+    }
+
+    /** Return a random character of my alphabet. */
+    private char randomChar() {
+        return _alphabet.toChar(_random.nextInt(_alphabet.size()));
+    }
+
+    /** Return N distinct names chosen at random from NAMES. */
+    private ArrayList<String> pick(ArrayList<String> names, int n) {
+        ArrayList<String> result = new ArrayList<>(names);
+        Collections.shuffle(result, _random);
+        return new ArrayList<>(result.subList(0, n));
+    }
+
+    /** Number of single-line giant messages in a corpus. */
+    static final int GIANT_LINES = 3;
+
+    /** Fraction of a corpus in giant messages. */
+    static final double GIANT_SHARE = 0.3;
+
+    /** Most lines in a short message. */
+    static final int MAX_SHORT_LINES = 6;
+
+    /** Shortest and longest lines in short messages. */
+    static final int MIN_SHORT_LENGTH = 1, MAX_SHORT_LENGTH = 120;
+
+    /** Most plugboard pairs on a setting line. */
+    static final int MAX_PLUGS = 10;
+
+    /** One in SPACE_ODDS message characters is a space. */
+    static final int SPACE_ODDS = 8;
+
+    /** Size of the buffer in which giant lines are generated. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** My machine's alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Number of rotor slots and pawls in my machine. */
+    private final int _numRotors, _pawls;
+
+    /** Source of random choices. */
+    private final Random _random;
+
+    /** Names of available reflectors, fixed rotors, and moving rotors. */
+    private final ArrayList<String> _reflectors = new ArrayList<>(),
+        _fixed = new ArrayList<>(), _moving = new ArrayList<>();
+}
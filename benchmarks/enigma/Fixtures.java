@@ -0,0 +1,132 @@
+package enigma;
+
+import java.util.Random;
+
+/** Randomly generated but reproducible alphabets, rotors, machines,
+ *  configurations, and messages shared by the benchmarks.
+ *  @author Roland Li
+ */
+class Fixtures {
+
+    /** Seed for all generated data, so that runs are comparable. */
+    static final long SEED = 0x5EED;
+
+    /** Return an alphabet of SIZE consecutive characters: upper-case
+     *  letters when SIZE is at most 26, and otherwise ideographs, which
+     *  have no case, so that Machine.convert(String) keeps them all. */
+    static Alphabet alphabet(int size) {
+        char first = size <= 26 ? 'A' : '\u4E00';
+        return new CharacterRange(first, (char) (first + size - 1));
+    }
+
+    /** Return cycles (in the notation accepted by Permutation) forming a
+     *  random permutation of ALPHA, chosen with RANDOM. */
+    static String randomCycles(Alphabet alpha, Random random) {
+        int[] order = shuffled(alpha.size(), random);
+        StringBuilder cycles = new StringBuilder();
+        int i = 0;
+        while (i < order.length) {
+            int len = 1 + random.nextInt(order.length - i);
+            cycles.append('(');
+            for (int k = 0; k < len; k += 1, i += 1) {
+                cycles.append(alpha.toChar(order[i]));
+            }
+            cycles.append(") ");
+        }
+        return cycles.toString();
+    }
+
+    /** Return cycles pairing up the characters of ALPHA at random, chosen
+     *  with RANDOM, as for a reflector.  The size of ALPHA must be
+     *  even. */
+    static String reflectorCycles(Alphabet alpha, Random random) {
+        int[] order = shuffled(alpha.size(), random);
+        StringBuilder cycles = new StringBuilder();
+        for (int i = 0; i + 1 < order.length; i += 2) {
+            cycles.append('(').append(alpha.toChar(order[i]))
+                .append(alpha.toChar(order[i + 1])).append(") ");
+        }
+        return cycles.toString();
+    }
+
+    /** Return the text of a configuration file for a machine with an
+     *  alphabet of SIZE characters and ROTORS slots, all but the first
+     *  holding moving rotors.  It describes 2 * ROTORS rotors of each
+     *  kind. */
+    static String config(int size, int rotors) {
+        Random random = new Random(SEED);
+        Alphabet alpha = alphabet(size);
+        StringBuilder config = new StringBuilder();
+        config.append(alpha.toChar(0)).append('-')
+            .append(alpha.toChar(size - 1)).append('\n');
+        config.append(rotors).append(' ').append(rotors - 1).append('\n');
+        for (int i = 0; i < 2 * rotors; i += 1) {
+            config.append(" M").append(i).append(" M")
+                .append(alpha.toChar(random.nextInt(size))).append(' ')
+                .append(randomCycles(alpha, random)).append('\n');
+        }
+        for (int i = 0; i < 2; i += 1) {
+            config.append(" R").append(i).append(" R ")
+                .append(reflectorCycles(alpha, random)).append('\n');
+        }
+        return config.toString();
+    }
+
+    /** Return a machine with an alphabet of SIZE characters and ROTORS
+     *  slots, set up with its rotors inserted, random settings, and a
+     *  plugboard. */
+    static Machine machine(int size, int rotors) {
+        Machine machine =
+            new ConfigParser(config(size, rotors).toCharArray()).parse();
+        Random random = new Random(SEED);
+        Alphabet alpha = machine.alphabet();
+        String[] names = new String[rotors];
+        names[0] = "R0";
+        StringBuilder setting = new StringBuilder();
+        for (int i = 1; i < rotors; i += 1) {
+            names[i] = "M" + i;
+            setting.append(alpha.toChar(random.nextInt(size)));
+        }
+        machine.insertRotors(names);
+        machine.setRotors(setting.toString());
+        machine.setPlugboard(new Permutation(String.format("(%c%c) (%c%c)",
+            alpha.toChar(0), alpha.toChar(1), alpha.toChar(2),
+            alpha.toChar(3)), alpha));
+        return machine;
+    }
+
+    /** Return a message of LEN random characters from ALPHA. */
+    static String message(Alphabet alpha, int len) {
+        Random random = new Random(SEED);
+        char[] msg = new char[len];
+        for (int i = 0; i < len; i += 1) {
+            msg[i] = alpha.toChar(random.nextInt(alpha.size()));
+        }
+        return new String(msg);
+    }
+
+    /** Return LEN random indices into an alphabet of SIZE characters. */
+    static int[] indices(int size, int len) {
+        Random random = new Random(SEED);
+        int[] result = new int[len];
+        for (int i = 0; i < len; i += 1) {
+            result[i] = random.nextInt(size);
+        }
+        return result;
+    }
+
+    /** Return a random ordering of 0 .. N-1 chosen with RANDOM. */
+    private static int[] shuffled(int n, Random random) {
+        int[] order = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            order[i] = i;
+        }
+        for (int i = n - 1; i > 0; i -= 1) {
+            int k = random.nextInt(i + 1);
+            int t = order[i];
+            order[i] = order[k];
+            order[k] = t;
+        }
+        return order;
+    }
+}
@@ -0,0 +1,254 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.EnigmaException.*;
+
+/** Measures the latency and throughput of a running Server.  Usage:
+ *      java enigma.LoadGenerator [--port=N | --socket=PATH]
+ *          [--connections=N] [--requests=N] [--warmup=N] CONFIG
+ *  opens N connections (default DEFAULT_CONNECTIONS) to the server at
+ *  the given address (as for Server), each on its own thread, and sends
+ *  requests on each one after another: first --warmup unmeasured
+ *  requests, and then --requests measured ones.  Requests are short
+ *  messages with random keys for the machine described by CONFIG (see
+ *  CorpusGenerator.request).  Reports requests and request characters
+ *  per second and the 50th, 90th, 99th and 99.9th percentile and
+ *  maximum latencies.
+ *  @author Roland Li
+ */
+class LoadGenerator {
+
+    /** Run as described by ARGS (see the class comment). */
+    public static void main(String... args) {
+        try {
+            SocketAddress address =
+                new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                      Server.DEFAULT_PORT);
+            int connections = DEFAULT_CONNECTIONS;
+            int requests = DEFAULT_REQUESTS;
+            int warmup = DEFAULT_WARMUP;
+            ArrayList<String> operands = new ArrayList<>();
+            for (String arg : args) {
+                if (Server.address(arg) != null) {
+                    address = Server.address(arg);
+                } else if (arg.startsWith("--connections=")) {
+                    connections = Integer.parseInt(arg.substring(14));
+                } else if (arg.startsWith("--requests=")) {
+                    requests = Integer.parseInt(arg.substring(11));
+                } else if (arg.startsWith("--warmup=")) {
+                    warmup = Integer.parseInt(arg.substring(9));
+                } else if (arg.startsWith("--")) {
+                    throw error("unknown option %s", arg);
+                } else {
+                    operands.add(arg);
+                }
+            }
+            if (operands.size() != 1 || connections < 1 || requests < 1
+                || warmup < 0) {
+                throw error("Usage: java enigma.LoadGenerator [--port=N | "
+                            + "--socket=PATH] [--connections=N] "
+                            + "[--requests=N] [--warmup=N] CONFIG");
+            }
+            Machine machine = new ConfigParser(
+                new String(Files.readAllBytes(Paths.get(operands.get(0))))
+                .toCharArray()).parse();
+            LoadGenerator load = new LoadGenerator(address,
+                requests(machine, REQUEST_POOL));
+            if (load.run(connections, requests, warmup)) {
+                return;
+            }
+        } catch (IOException | EnigmaException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return N requests for machines like MACHINE. */
+    static List<String> requests(Machine machine, int n) throws IOException {
+        CorpusGenerator generator =
+            new CorpusGenerator(machine, new Random(Fixtures.SEED));
+        ArrayList<String> result = new ArrayList<>();
+        for (int i = 0; i < n; i += 1) {
+            StringWriter request = new StringWriter();
+            generator.request(request);
+            result.add(request.toString());
+        }
+        return result;
+    }
+
+    /** A load generator sending REQUESTS, in turn, to the server at
+     *  ADDRESS. */
+    LoadGenerator(SocketAddress address, List<String> requests) {
+        _address = address;
+        _requests = requests;
+    }
+
+    /** Send REQUESTS measured requests, after WARMUP unmeasured ones, on
+     *  each of CONNECTIONS connections, and print statistics.  Return
+     *  false if any request failed. */
+    boolean run(int connections, int requests, int warmup) {
+        _latencies = new long[connections * requests];
+        _start = new CyclicBarrier(connections + 1);
+        _finish = new CyclicBarrier(connections + 1);
+        for (int t = 0; t < connections; t += 1) {
+            int first = t;
+            new Thread(() -> drive(first, requests, warmup)).start();
+        }
+        await(_start);
+        long began = System.nanoTime();
+        await(_finish);
+        double seconds = (System.nanoTime() - began) / 1e9;
+        if (_failures.get() > 0) {
+            System.out.printf("%d requests failed%n", _failures.get());
+            return false;
+        }
+        long[] latencies = _latencies;
+        Arrays.sort(latencies);
+        System.out.printf("%d connections, %d requests: %.2f s, "
+                          + "%.0f requests/s, %.0f chars/s%n",
+                          connections, latencies.length, seconds,
+                          latencies.length / seconds, _chars.get() / seconds);
+        System.out.printf("latency (us): p50 %.0f  p90 %.0f  p99 %.0f  "
+                          + "p99.9 %.0f  max %.0f%n",
+                          percentile(latencies, 0.5),
+                          percentile(latencies, 0.9),
+                          percentile(latencies, 0.99),
+                          percentile(latencies, 0.999),
+                          latencies[latencies.length - 1] / 1e3);
+        return true;
+    }
+
+    /** Send WARMUP and then REQUESTS measured requests on a connection
+     *  of my own, starting with request number FIRST, and store their
+     *  latencies from index FIRST * REQUESTS of _latencies.  Waits at
+     *  _start between the two and at _finish at the end, even if the
+     *  connection fails. */
+    private void drive(int first, int requests, int warmup) {
+        Client client = null;
+        try {
+            client = connect();
+            for (int r = 0; r < warmup; r += 1) {
+                client.send(request(first + r));
+            }
+        } catch (IOException | EnigmaException excp) {
+            fail(excp);
+        }
+        await(_start);
+        try {
+            for (int r = 0; client != null && r < requests; r += 1) {
+                String request = request(first + r);
+                long began = System.nanoTime();
+                String response = client.send(request);
+                _latencies[first * requests + r] = System.nanoTime() - began;
+                if (response.startsWith(Client.ERROR)) {
+                    fail(error("%s", response.trim()));
+                }
+                _chars.addAndGet(request.length());
+            }
+        } catch (IOException | EnigmaException excp) {
+            fail(excp);
+        } finally {
+            try {
+                if (client != null) {
+                    client.close();
+                }
+            } catch (IOException excp) {
+                fail(excp);
+            }
+            await(_finish);
+        }
+    }
+
+    /** Record a failure, reporting EXCP. */
+    private void fail(Exception excp) {
+        System.err.printf("Error: %s%n", excp.getMessage());
+        _failures.incrementAndGet();
+    }
+
+    /** Return request number K, cycling through my requests. */
+    private String request(int k) {
+        return _requests.get(k % _requests.size());
+    }
+
+    /** Return a new client connected to my server, retrying for up to
+     *  CONNECT_MILLIS in case the server is still starting. */
+    private Client connect() throws IOException {
+        long deadline = System.currentTimeMillis() + CONNECT_MILLIS;
+        while (true) {
+            try {
+                return new Client(_address);
+            } catch (IOException excp) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw excp;
+                }
+            }
+            try {
+                Thread.sleep(RETRY_MILLIS);
+            } catch (InterruptedException excp) {
+                throw error("interrupted");
+            }
+        }
+    }
+
+    /** Return the FRACTION percentile of the sorted nanosecond LATENCIES,
+     *  in microseconds. */
+    private static double percentile(long[] latencies, double fraction) {
+        int k = (int) Math.ceil(fraction * latencies.length) - 1;
+        return latencies[Math.max(k, 0)] / 1e3;
+    }
+
+    /** Wait at BARRIER. */
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await();
+        } catch (BrokenBarrierException | InterruptedException excp) {
+            throw error("interrupted");
+        }
+    }
+
+    /** Number of distinct requests generated. */
+    static final int REQUEST_POOL = 1000;
+
+    /** Defaults for --connections, --requests and --warmup. */
+    static final int DEFAULT_CONNECTIONS = 16, DEFAULT_REQUESTS = 2000,
+        DEFAULT_WARMUP = 500;
+
+    /** Time for which connecting is retried. */
+    static final long CONNECT_MILLIS = 10000;
+
+    /** Interval between connection attempts. */
+    static final long RETRY_MILLIS = 50;
+
+    /** Address of the server. */
+    private final SocketAddress _address;
+
+    /** Requests sent. */
+    private final List<String> _requests;
+
+    /** Latency of each measured request, in nanoseconds. */
+    private long[] _latencies;
+
+    /** Barriers passed by all connections and the main thread at the
+     *  start and finish of the measured requests. */
+    private CyclicBarrier _start, _finish;
+
+    /** Number of characters sent in measured requests. */
+    private final AtomicLong _chars = new AtomicLong();
+
+    /** Number of failed requests or connections. */
+    private final AtomicLong _failures = new AtomicLong();
+}
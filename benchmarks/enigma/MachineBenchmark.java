@@ -0,0 +1,60 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of converting single characters with a complete machine.
+ *  The machine keeps stepping from one invocation to the next, as it
+ *  would through a long message.
+ *  @author Roland Li
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MachineBenchmark {
+
+    /** Number of characters converted per invocation of convertInt. */
+    static final int OPS = 1024;
+
+    /** Size of the machine's alphabet. */
+    @Param({"26", "64", "256"})
+    public int alphabetSize;
+
+    /** Number of rotor slots, all but the reflector's holding moving
+     *  rotors. */
+    @Param({"3", "5", "8"})
+    public int rotorCount;
+
+    /** Build the machine and its inputs. */
+    @Setup
+    public void setUp() {
+        _machine = Fixtures.machine(alphabetSize, rotorCount);
+        _indices = Fixtures.indices(alphabetSize, OPS);
+    }
+
+    /** Return the sum of converting OPS characters with convert(int). */
+    @Benchmark
+    @OperationsPerInvocation(OPS)
+    public int convertInt() {
+        int sum = 0;
+        for (int c : _indices) {
+            sum += _machine.convert(c);
+        }
+        return sum;
+    }
+
+    /** The machine measured. */
+    private Machine _machine;
+
+    /** Random inputs to convert(int). */
+    private int[] _indices;
+}
@@ -0,0 +1,53 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of converting whole messages with Machine.convert(String),
+ *  which includes upper-casing, filtering, and building the result.
+ *  @author Roland Li
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MessageBenchmark {
+
+    /** Size of the machine's alphabet. */
+    @Param({"26", "64", "256"})
+    public int alphabetSize;
+
+    /** Number of rotor slots (see MachineBenchmark). */
+    @Param({"3", "5", "8"})
+    public int rotorCount;
+
+    /** Length of the message. */
+    @Param({"16", "1024", "65536"})
+    public int messageLength;
+
+    /** Build the machine and the message. */
+    @Setup
+    public void setUp() {
+        _machine = Fixtures.machine(alphabetSize, rotorCount);
+        _message = Fixtures.message(_machine.alphabet(), messageLength);
+    }
+
+    /** Return the conversion of the message. */
+    @Benchmark
+    public String convertString() {
+        return _machine.convert(_message);
+    }
+
+    /** The machine measured. */
+    private Machine _machine;
+
+    /** The message converted. */
+    private String _message;
+}
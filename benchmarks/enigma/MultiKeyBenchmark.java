@@ -0,0 +1,103 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of converting one short message under many keys, as a key
+ *  search does: with a Machine set up afresh for each key, and with a
+ *  MultiKeyEngine converting under all keys at once.
+ *  @author Roland Li
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MultiKeyBenchmark {
+
+    /** Number of rotor slots (see MachineBenchmark). */
+    @Param({"3", "5"})
+    public int rotorCount;
+
+    /** Number of keys. */
+    @Param({"64", "4096"})
+    public int keyCount;
+
+    /** Length of the message. */
+    @Param({"32", "256"})
+    public int messageLength;
+
+    /** Build the machine, the keys, and the message. */
+    @Setup
+    public void setUp() {
+        _machine = Fixtures.machine(ALPHABET_SIZE, rotorCount);
+        Alphabet alpha = _machine.alphabet();
+        Random random = new Random(Fixtures.SEED);
+        _keys = new ArrayList<>();
+        for (int k = 0; k < keyCount; k += 1) {
+            String[] names = new String[rotorCount];
+            names[0] = "R" + random.nextInt(2);
+            char[] setting = new char[rotorCount - 1];
+            for (int i = 1; i < rotorCount; i += 1) {
+                names[i] = "M" + ((i + k) % (2 * rotorCount));
+                setting[i - 1] = alpha.toChar(random.nextInt(ALPHABET_SIZE));
+            }
+            _keys.add(new Bombe.Key(names, new String(setting), "(AB) (CD)"));
+        }
+        _message = Fixtures.message(alpha, messageLength);
+        _text = Fixtures.indices(ALPHABET_SIZE, messageLength);
+        _engine = new MultiKeyEngine(_machine);
+        _engine.setKeys(_keys);
+    }
+
+    /** Return a checksum of the message converted under each key by
+     *  _machine. */
+    @Benchmark
+    public int machinePerKey() {
+        Permutation plugboard =
+            new Permutation("(AB) (CD)", _machine.alphabet());
+        int sum = 0;
+        for (Bombe.Key key : _keys) {
+            _machine.insertRotors(key.rotors());
+            _machine.setRotors(key.setting());
+            _machine.setPlugboard(plugboard);
+            sum += _machine.convert(_message).hashCode();
+        }
+        return sum;
+    }
+
+    /** Return a checksum of the message converted under all keys at once
+     *  by a MultiKeyEngine. */
+    @Benchmark
+    public int multiKey() {
+        _engine.reset();
+        _engine.convert(_text, messageLength);
+        return _engine.output(keyCount - 1, null)[messageLength - 1];
+    }
+
+    /** Size of the machine's alphabet. */
+    static final int ALPHABET_SIZE = 26;
+
+    /** The machine used for each key in turn. */
+    private Machine _machine;
+
+    /** The keys. */
+    private ArrayList<Bombe.Key> _keys;
+
+    /** The message. */
+    private String _message;
+
+    /** The message as alphabet indices. */
+    private int[] _text;
+
+    /** The engine measured. */
+    private MultiKeyEngine _engine;
+}
@@ -0,0 +1,94 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of single Permutation lookups, by index and by character.
+ *  Each invocation performs OPS lookups of random inputs.
+ *  @author Roland Li
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PermutationBenchmark {
+
+    /** Number of lookups per invocation. */
+    static final int OPS = 1024;
+
+    /** Size of the alphabet permuted. */
+    @Param({"26", "64", "256"})
+    public int alphabetSize;
+
+    /** Build the permutation and its inputs. */
+    @Setup
+    public void setUp() {
+        Alphabet alpha = Fixtures.alphabet(alphabetSize);
+        _perm = new Permutation(
+            Fixtures.randomCycles(alpha, new Random(Fixtures.SEED)), alpha);
+        _indices = Fixtures.indices(alphabetSize, OPS);
+        _chars = Fixtures.message(alpha, OPS).toCharArray();
+    }
+
+    /** Return the sum of OPS results of permute(int). */
+    @Benchmark
+    @OperationsPerInvocation(OPS)
+    public int permuteInt() {
+        int sum = 0;
+        for (int p : _indices) {
+            sum += _perm.permute(p);
+        }
+        return sum;
+    }
+
+    /** Return the sum of OPS results of invert(int). */
+    @Benchmark
+    @OperationsPerInvocation(OPS)
+    public int invertInt() {
+        int sum = 0;
+        for (int c : _indices) {
+            sum += _perm.invert(c);
+        }
+        return sum;
+    }
+
+    /** Return the sum of OPS results of permute(char). */
+    @Benchmark
+    @OperationsPerInvocation(OPS)
+    public int permuteChar() {
+        int sum = 0;
+        for (char p : _chars) {
+            sum += _perm.permute(p);
+        }
+        return sum;
+    }
+
+    /** Return the sum of OPS results of invert(char). */
+    @Benchmark
+    @OperationsPerInvocation(OPS)
+    public int invertChar() {
+        int sum = 0;
+        for (char c : _chars) {
+            sum += _perm.invert(c);
+        }
+        return sum;
+    }
+
+    /** The permutation measured. */
+    private Permutation _perm;
+
+    /** Random indices into the alphabet. */
+    private int[] _indices;
+
+    /** Random characters of the alphabet. */
+    private char[] _chars;
+}
@@ -0,0 +1,95 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of single rotor conversions and notch tests.  Each
+ *  invocation performs OPS operations on random inputs, moving the rotor
+ *  to a new setting every SETTING_RUN operations so that all rows of its
+ *  tables are used.
+ *  @author Roland Li
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RotorBenchmark {
+
+    /** Number of operations per invocation. */
+    static final int OPS = 1024;
+
+    /** Number of operations between changes of setting. */
+    static final int SETTING_RUN = 16;
+
+    /** Size of the rotor's alphabet. */
+    @Param({"26", "64", "256"})
+    public int alphabetSize;
+
+    /** Build the rotor and its inputs. */
+    @Setup
+    public void setUp() {
+        Alphabet alpha = Fixtures.alphabet(alphabetSize);
+        Random random = new Random(Fixtures.SEED);
+        _rotor = new MovingRotor("I",
+            new Permutation(Fixtures.randomCycles(alpha, random), alpha),
+            String.valueOf(alpha.toChar(random.nextInt(alphabetSize))));
+        _indices = Fixtures.indices(alphabetSize, OPS);
+    }
+
+    /** Return the sum of OPS results of convertForward. */
+    @Benchmark
+    @OperationsPerInvocation(OPS)
+    public int convertForward() {
+        int sum = 0;
+        for (int i = 0; i < OPS; i += SETTING_RUN) {
+            _rotor.advance();
+            for (int k = i; k < i + SETTING_RUN; k += 1) {
+                sum += _rotor.convertForward(_indices[k]);
+            }
+        }
+        return sum;
+    }
+
+    /** Return the sum of OPS results of convertBackward. */
+    @Benchmark
+    @OperationsPerInvocation(OPS)
+    public int convertBackward() {
+        int sum = 0;
+        for (int i = 0; i < OPS; i += SETTING_RUN) {
+            _rotor.advance();
+            for (int k = i; k < i + SETTING_RUN; k += 1) {
+                sum += _rotor.convertBackward(_indices[k]);
+            }
+        }
+        return sum;
+    }
+
+    /** Return the number of notches found in OPS steps of the rotor. */
+    @Benchmark
+    @OperationsPerInvocation(OPS)
+    public int atNotch() {
+        int count = 0;
+        for (int i = 0; i < OPS; i += 1) {
+            _rotor.advance();
+            if (_rotor.atNotch()) {
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    /** The rotor measured. */
+    private MovingRotor _rotor;
+
+    /** Random inputs to the rotor. */
+    private int[] _indices;
+}
@@ -0,0 +1,207 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static enigma.EnigmaException.*;
+
+/** Runs Main over a corpus (see CorpusGenerator) once per I/O mode, each
+ *  in its own JVM as it is run in production, and reports the throughput
+ *  and memory use of each.  Usage:
+ *      java enigma.ThroughputDriver CONFIG CORPUS [MODE ...]
+ *  where each MODE is a space-separated list of options for Main (such as
+ *  "--mmap" or "--jobs=4 --composite"), and "default" stands for no
+ *  options.  Without MODEs, runs each of DEFAULT_MODES.  For each mode,
+ *  reports the elapsed time, megabytes of input and message characters
+ *  converted per second, and the peak resident set size of the child
+ *  JVM.  Each mode's output is checked against the first mode's, so that
+ *  a mode that is fast because it is wrong does not go unnoticed.
+ *  @author Roland Li
+ */
+class ThroughputDriver {
+
+    /** Run the modes described by ARGS (see the class comment). */
+    public static void main(String... args) {
+        try {
+            if (args.length < 2) {
+                throw error("Usage: java enigma.ThroughputDriver CONFIG "
+                            + "CORPUS [MODE ...]");
+            }
+            List<String> modes = args.length > 2
+                ? Arrays.asList(args).subList(2, args.length)
+                : Arrays.asList(DEFAULT_MODES);
+            if (!new ThroughputDriver(args[0], args[1]).run(modes)) {
+                System.exit(1);
+            }
+        } catch (IOException | EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** A driver running Main with the configuration file CONFIG on the
+     *  corpus CORPUS. */
+    ThroughputDriver(String config, String corpus) throws IOException {
+        _config = config;
+        _corpus = corpus;
+        _bytes = Files.size(Paths.get(corpus));
+        _chars = messageChars(new ConfigParser(
+            new String(Files.readAllBytes(Paths.get(config)))
+            .toCharArray()).parse().alphabet());
+    }
+
+    /** Run and report on each of MODES, returning false if any failed or
+     *  produced different output from the first. */
+    boolean run(List<String> modes) throws IOException {
+        System.out.printf("%s: %.1f MB, %d message characters%n", _corpus,
+                          _bytes / MEGABYTE, _chars);
+        System.out.printf("%-28s %9s %9s %12s %10s%n", "mode", "seconds",
+                          "MB/s", "chars/s", "peak RSS");
+        boolean ok = true;
+        File expected = null;
+        for (String mode : modes) {
+            File output = File.createTempFile("enigma", ".out");
+            output.deleteOnExit();
+            String result = runMode(mode, output);
+            if (result != null) {
+                System.out.printf("%-28s %s%n", mode, result);
+                ok = false;
+            } else if (expected == null) {
+                expected = output;
+            } else if (!Arrays.equals(Files.readAllBytes(expected.toPath()),
+                                      Files.readAllBytes(output.toPath()))) {
+                System.out.printf("%-28s output differs from %s%n", mode,
+                                  modes.get(0));
+                ok = false;
+            }
+            if (output != expected) {
+                output.delete();
+            }
+        }
+        return ok;
+    }
+
+    /** Run Main in MODE, writing to OUTPUT, and print its statistics.
+     *  Return null on success, and otherwise a description of the
+     *  failure. */
+    private String runMode(String mode, File output) throws IOException {
+        ArrayList<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java")
+                    .toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("enigma.Main");
+        if (!mode.equals("default")) {
+            command.addAll(Arrays.asList(mode.trim().split("\\s+")));
+        }
+        command.add(_config);
+        command.add(_corpus);
+        command.add(output.getPath());
+        File errors = File.createTempFile("enigma", ".err");
+        errors.deleteOnExit();
+        long start = System.nanoTime();
+        Process child = new ProcessBuilder(command)
+            .redirectErrorStream(true)
+            .redirectOutput(errors).start();
+        long peak = -1;
+        try {
+            while (child.isAlive()) {
+                peak = Math.max(peak, peakResidentKB(child.pid()));
+                child.waitFor(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException excp) {
+            child.destroy();
+            return "interrupted";
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        String messages =
+            new String(Files.readAllBytes(errors.toPath())).trim();
+        errors.delete();
+        if (child.exitValue() != 0) {
+            return String.format("failed (exit %d): %s", child.exitValue(),
+                                 messages);
+        }
+        System.out.printf("%-28s %9.2f %9.1f %12.0f %10s%n", mode, seconds,
+                          _bytes / MEGABYTE / seconds, _chars / seconds,
+                          peak < 0 ? "n/a" : peak / 1024 + " MB");
+        return null;
+    }
+
+    /** Return the peak resident set size of process PID in kilobytes, as
+     *  reported by /proc/PID/status, or -1 if that is unavailable (for
+     *  example, once the process has exited).  The peak only grows, so
+     *  the last value read before the process exits is close to the
+     *  true peak. */
+    private static long peakResidentKB(long pid) {
+        try {
+            String status = "/proc/" + pid + "/status";
+            for (String line : Files.readAllLines(Paths.get(status))) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        } catch (IOException | NumberFormatException excp) {
+            return -1;
+        }
+        return -1;
+    }
+
+    /** Return the number of characters of ALPHA (after conversion to
+     *  upper case) in message lines of the corpus. */
+    private long messageChars(Alphabet alpha) throws IOException {
+        long count = 0;
+        try (Reader in = Files.newBufferedReader(Paths.get(_corpus),
+                                                 StandardCharsets.UTF_8)) {
+            MessageReader lines = new MessageReader(in, BUFFER_SIZE);
+            char[] buf = new char[BUFFER_SIZE];
+            while (lines.nextLine()) {
+                if (lines.peek() == '*') {
+                    continue;
+                }
+                int n;
+                while ((n = lines.read(buf, 0, buf.length)) >= 0) {
+                    for (int i = 0; i < n; i += 1) {
+                        if (alpha.contains(Character.toUpperCase(buf[i]))) {
+                            count += 1;
+                        }
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /** Modes run when none are given.  The composite modes are left out:
+     *  they build a table for each new choice of rotors and plugboard,
+     *  which on a corpus of many short, differently keyed messages costs
+     *  far more than it saves. */
+    static final String[] DEFAULT_MODES = {
+        "default", "--mmap", "--parallel", "--jobs=4",
+    };
+
+    /** Bytes in a megabyte. */
+    static final double MEGABYTE = 1 << 20;
+
+    /** Interval at which a child's memory use is sampled. */
+    static final long POLL_MILLIS = 10;
+
+    /** Size of the buffer used to count message characters. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Names of the configuration file and of the corpus. */
+    private final String _config, _corpus;
+
+    /** Size of the corpus in bytes. */
+    private final long _bytes;
+
+    /** Number of message characters in the corpus. */
+    private final long _chars;
+}
@@ -0,0 +1,67 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** Performs the lookups of a batch of characters in a table of complete
+ *  substitutions (see CompositeTable and Machine.useEngine): given the
+ *  offset of each character's row, the conversion of character I is
+ *  TABLE[ROWS[I] + IN[I]].  The scalar engine does one lookup at a time;
+ *  the vector engine (VectorBatchEngine, built separately in directory
+ *  vector because it needs the incubating jdk.incubator.vector module)
+ *  does a whole vector of them with one gather.  Both give the same
+ *  results.
+ *  @author Roland Li
+ */
+abstract class BatchEngine {
+
+    /** Return the engine named NAME: "scalar" or "vector".  If the
+     *  vector engine is unavailable (not compiled, or run without
+     *  --add-modules jdk.incubator.vector), warns on the standard error
+     *  and returns the scalar one. */
+    static BatchEngine forName(String name) {
+        switch (name) {
+        case "scalar":
+            return new Scalar();
+        case "vector":
+            try {
+                return (BatchEngine) Class.forName(VECTOR_CLASS)
+                    .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError excp) {
+                System.err.println("Warning: vector engine unavailable;"
+                                   + " using scalar engine");
+                return new Scalar();
+            }
+        default:
+            throw error("unknown engine %s", name);
+        }
+    }
+
+    /** Return my name, as given to forName. */
+    abstract String name();
+
+    /** Set OUT[I] to TABLE[ROWS[I] + IN[I]] for 0 <= I < LEN.  OUT may
+     *  be IN.  May overwrite the first LEN elements of ROWS.  Engines
+     *  keep no state, so one may be shared by machines on any number of
+     *  threads. */
+    abstract void lookup(int[] table, int[] rows, int[] in, int[] out,
+                         int len);
+
+    /** The engine doing one lookup at a time. */
+    private static class Scalar extends BatchEngine {
+
+        @Override
+        String name() {
+            return "scalar";
+        }
+
+        @Override
+        void lookup(int[] table, int[] rows, int[] in, int[] out, int len) {
+            for (int i = 0; i < len; i += 1) {
+                out[i] = table[rows[i] + in[i]];
+            }
+        }
+    }
+
+    /** Name of the class of the vector engine. */
+    static final String VECTOR_CLASS = "enigma.VectorBatchEngine";
+}
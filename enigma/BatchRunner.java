@@ -0,0 +1,224 @@
+package enigma;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** Converts many input files with one machine configuration in a single
+ *  JVM, replacing a loop running Main once per file.  Files are
+ *  converted concurrently on a bounded pool of threads; each file gets
+ *  its own copy of the configured machine, and all share the rotors'
+ *  compiled tables.  An error in one file (anything Main would report)
+ *  is reported as Main reports it, and the rest of the batch goes on.
+ *  @author Roland Li
+ */
+class BatchRunner {
+
+    /** Convert the files described by ARGS:
+     *      [--jobs=N] CONFIG INPUTS [OUTDIR]
+     *  CONFIG is a configuration file or machine image, as for Main.
+     *  INPUTS is a directory, standing for all of its .inp files, or a
+     *  glob pattern (such as "tests/*.inp", quoted against the shell)
+     *  matching file names in one directory.  The output for F.inp goes
+     *  to F.out, in OUTDIR if given and otherwise beside F.inp.  --jobs
+     *  sets the number of files converted at once (default, the number
+     *  of processors).  Prints "Error: F: MESSAGE" on the standard error
+     *  for each file F that fails, and exits with code 1 if any did. */
+    public static void main(String... args) {
+        try {
+            Metrics.enableFromProperty();
+            int jobs = Runtime.getRuntime().availableProcessors();
+            ArrayList<String> operands = new ArrayList<>();
+            for (String arg : args) {
+                if (arg.startsWith("--jobs=")) {
+                    try {
+                        jobs = Integer.parseInt(arg.substring(7));
+                    } catch (NumberFormatException excp) {
+                        jobs = 0;
+                    }
+                    if (jobs < 1) {
+                        throw error("bad job count in %s", arg);
+                    }
+                } else if (arg.startsWith("--")) {
+                    throw error("unknown option %s", arg);
+                } else {
+                    operands.add(arg);
+                }
+            }
+            if (operands.size() < 2 || operands.size() > 3) {
+                throw error("Usage: java enigma.BatchRunner [--jobs=N] "
+                            + "CONFIG INPUTS [OUTDIR]");
+            }
+            String config = operands.get(0);
+            Machine machine = MachineImage.isImage(config)
+                ? MachineImage.load(config)
+                : new ConfigParser(new String(Files.readAllBytes(
+                      Paths.get(config))).toCharArray()).parse();
+            Path outDir = operands.size() > 2
+                ? Paths.get(operands.get(2)) : null;
+            BatchRunner runner = new BatchRunner(machine, jobs);
+            if (runner.run(inputs(operands.get(1)), outDir) == 0) {
+                return;
+            }
+        } catch (IOException excp) {
+            System.err.printf("Error: could not read %s%n",
+                              excp.getMessage());
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the input files named by INPUTS (see main), in order of
+     *  name. */
+    static List<Path> inputs(String inputs) throws IOException {
+        Path dir = Paths.get(inputs);
+        String glob = "*" + INPUT_SUFFIX;
+        if (!Files.isDirectory(dir)) {
+            glob = dir.getFileName().toString();
+            dir = dir.getParent() == null ? Paths.get(".") : dir.getParent();
+        }
+        ArrayList<Path> result = new ArrayList<>();
+        try (DirectoryStream<Path> files =
+                 Files.newDirectoryStream(dir, glob)) {
+            for (Path file : files) {
+                if (Files.isRegularFile(file)) {
+                    result.add(file);
+                }
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /** A runner converting files with copies of MACHINE, which must not
+     *  be changed while I am running, JOBS files at a time. */
+    BatchRunner(Machine machine, int jobs) {
+        _machine = machine;
+        _jobs = jobs;
+    }
+
+    /** Convert each of INPUTS into the corresponding output file in
+     *  OUTDIR, or beside it if OUTDIR is null, reporting errors as
+     *  described in main.  Return the number of files that failed. */
+    int run(List<Path> inputs, Path outDir) {
+        ExecutorService pool = Executors.newFixedThreadPool(_jobs);
+        try {
+            ArrayList<Future<String>> results = new ArrayList<>();
+            for (Path input : inputs) {
+                Path dir = outDir == null ? input.getParent() : outDir;
+                Path output = outputName(input, dir);
+                results.add(pool.submit(() -> convert(input, output)));
+            }
+            int failures = 0;
+            for (int i = 0; i < results.size(); i += 1) {
+                String message = result(results.get(i));
+                if (message != null) {
+                    System.err.printf("Error: %s: %s%n", inputs.get(i),
+                                      message);
+                    failures += 1;
+                }
+            }
+            return failures;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Convert the messages in INPUT into OUTPUT, as Main does.  Return
+     *  null on success, and otherwise the message Main would report, or
+     *  a description of any other exception, so that one bad file never
+     *  stops the others. */
+    private String convert(Path input, Path output) {
+        Reader in;
+        try {
+            in = new InputStreamReader(new FileInputStream(input.toFile()));
+        } catch (IOException excp) {
+            return String.format("could not open %s", input);
+        }
+        GroupedWriter out;
+        try {
+            out = new GroupedWriter(
+                FileChannel.open(output, StandardOpenOption.WRITE,
+                                 StandardOpenOption.CREATE,
+                                 StandardOpenOption.TRUNCATE_EXISTING),
+                Charset.defaultCharset(), Main.OUTPUT_BUFFER_SIZE, false);
+        } catch (IOException excp) {
+            close(in);
+            return String.format("could not open %s", output);
+        }
+        try {
+            new Main(_machine.alphabet(), in, out)
+                .convertMessages(_machine.copy());
+            return null;
+        } catch (EnigmaException excp) {
+            return excp.getMessage();
+        } catch (RuntimeException excp) {
+            return excp.toString();
+        } finally {
+            close(in);
+            out.close();
+        }
+    }
+
+    /** Close IN, ignoring errors: it has been read as far as needed. */
+    private static void close(Reader in) {
+        try {
+            in.close();
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** Return the result of RESULT, waiting for it. */
+    private static String result(Future<String> result) {
+        try {
+            return result.get();
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw new IllegalStateException(excp.getCause());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        }
+    }
+
+    /** Return the output file for INPUT in directory DIR: INPUT's name
+     *  with INPUT_SUFFIX replaced by (or, failing that, followed by)
+     *  OUTPUT_SUFFIX. */
+    static Path outputName(Path input, Path dir) {
+        String name = input.getFileName().toString();
+        if (name.endsWith(INPUT_SUFFIX)) {
+            name = name.substring(0, name.length() - INPUT_SUFFIX.length());
+        }
+        return dir.resolve(name + OUTPUT_SUFFIX);
+    }
+
+    /** Suffixes of input and output files. */
+    static final String INPUT_SUFFIX = ".inp", OUTPUT_SUFFIX = ".out";
+
+    /** Machine copied for each file. */
+    private final Machine _machine;
+
+    /** Number of files converted at once. */
+    private final int _jobs;
+}
@@ -0,0 +1,574 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** A crib-based key search in the manner of the Turing-Welchman bombe.
+ *  Given a ciphertext and a piece of known plaintext (the crib) at a
+ *  known offset, it tries every rotor order drawn from a machine's
+ *  rotors and every starting position of those rotors, and reports the
+ *  keys (rotors, settings, and as much of the plugboard as the crib
+ *  determines) consistent with the crib.
+ *
+ *  At each position, the crib's pairs of plain and cipher letters form a
+ *  "menu": a graph on letters with an edge P-C for each pair, labeled by
+ *  the pair's place in the text.  Since the plugboard X is an involution,
+ *  if X(P) = V then X(C) = S(V), where S is the substitution of the rotors
+ *  alone at that place, and X(V) = P.  Starting from each hypothesis
+ *  X(T) = V for the menu's most connected letter T, the search propagates
+ *  these implications, recording the values implied for each letter as a
+ *  bit set, and rejects the hypothesis as soon as some letter is implied
+ *  to have two values.  Loops in the menu are what make wrong hypotheses
+ *  collide; a position survives if some hypothesis does.
+ *
+ *  The rotors' substitutions come from the machine's compiled tables (see
+ *  Machine.recordSteps and Machine.scramble), and the rotor orders are
+ *  split among threads, each using its own copy of the machine.
+ *  @author Roland Li
+ */
+class Bombe {
+
+    /** Search for keys as described by ARGS:
+     *      [--threads=N] [--rotors=R1,R2,...] CONFIG CIPHERTEXT CRIB [OFFSET]
+     *  CONFIG is a configuration file, as for Main, describing the machine
+     *  and its available rotors.  CRIB is known plaintext of CIPHERTEXT
+     *  starting OFFSET (default 0) characters in; characters of either
+     *  that are not in the alphabet (such as spaces) are ignored.
+     *  --rotors limits the search to one rotor order, and --threads sets
+     *  the number of threads (default, the number of processors).  Prints
+     *  each key found as a setting line and then, on the standard error,
+     *  the number of positions tested per second. */
+    public static void main(String... args) {
+        try {
+            int threads = Runtime.getRuntime().availableProcessors();
+            String[] order = null;
+            ArrayList<String> operands = new ArrayList<>();
+            for (String arg : args) {
+                if (arg.startsWith("--threads=")) {
+                    threads = parseCount(arg.substring(10), arg, 1);
+                } else if (arg.startsWith("--rotors=")) {
+                    order = arg.substring(9).toUpperCase().split(",");
+                } else if (arg.startsWith("--")) {
+                    throw error("unknown option %s", arg);
+                } else {
+                    operands.add(arg);
+                }
+            }
+            if (operands.size() < 3 || operands.size() > 4) {
+                throw error("Usage: java enigma.Bombe [--threads=N] "
+                            + "[--rotors=R1,R2,...] CONFIG CIPHERTEXT CRIB "
+                            + "[OFFSET]");
+            }
+            Machine machine = new ConfigParser(
+                new String(Files.readAllBytes(Paths.get(operands.get(0))))
+                .toCharArray()).parse();
+            int offset = operands.size() > 3
+                ? parseCount(operands.get(3), operands.get(3), 0) : 0;
+            Bombe bombe = new Bombe(machine, threads);
+            if (order != null && order.length != machine.numRotors()) {
+                throw error("--rotors must name %d rotors",
+                            machine.numRotors());
+            }
+            List<String[]> orders = order == null
+                ? bombe.rotorOrders() : Collections.singletonList(order);
+            for (Key key : bombe.search(operands.get(1), operands.get(2),
+                                        offset, orders)) {
+                System.out.println(key);
+            }
+            System.err.printf("%d rotor orders, %d positions, %d menu loops;"
+                              + " %.2f s (%.0f positions/s)%n",
+                              orders.size(), bombe.positionsTested(),
+                              bombe.loops(), bombe.seconds(),
+                              bombe.positionsTested() / bombe.seconds());
+            return;
+        } catch (IOException excp) {
+            System.err.printf("Error: could not read %s%n",
+                              excp.getMessage());
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A key found by the search. */
+    static class Key {
+
+        /** A key with rotors named ROTORS at settings SETTING and
+         *  plugboard cycles PLUGBOARD. */
+        Key(String[] rotors, String setting, String plugboard) {
+            _rotors = rotors;
+            _setting = setting;
+            _plugboard = plugboard;
+        }
+
+        /** Return the names of my rotors, reflector first. */
+        String[] rotors() {
+            return _rotors;
+        }
+
+        /** Return my rotors' initial settings, as for setRotors. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return the plugboard pairs determined by the crib, as cycles.
+         *  Letters the crib does not reach are left out. */
+        String plugboard() {
+            return _plugboard;
+        }
+
+        /** Return me as a setting line, as read by Main. */
+        @Override
+        public String toString() {
+            return "* " + String.join(" ", _rotors) + " " + _setting
+                + (_plugboard.isEmpty() ? "" : " " + _plugboard);
+        }
+
+        /** Rotor names. */
+        private final String[] _rotors;
+        /** Initial settings. */
+        private final String _setting;
+        /** Plugboard cycles. */
+        private final String _plugboard;
+    }
+
+    /** A search for keys of machines like MACHINE (that is, with its
+     *  alphabet and available rotors), on THREADS threads. */
+    Bombe(Machine machine, int threads) {
+        if (machine.alphabet().size() > Long.SIZE) {
+            throw error("crib search needs an alphabet of at most %d "
+                        + "characters", Long.SIZE);
+        }
+        _machine = machine;
+        _threads = threads;
+    }
+
+    /** Return every rotor order MACHINE's rotors allow: a reflector, then
+     *  distinct non-moving rotors for the slots without pawls, then
+     *  distinct moving rotors for the slots with pawls. */
+    List<String[]> rotorOrders() {
+        ArrayList<String> reflectors = new ArrayList<>();
+        ArrayList<String> fixed = new ArrayList<>();
+        ArrayList<String> moving = new ArrayList<>();
+        for (Rotor rotor : _machine.allRotors()) {
+            String name = rotor.name().toUpperCase();
+            if (rotor.reflecting()) {
+                reflectors.add(name);
+            } else if (rotor.rotates()) {
+                moving.add(name);
+            } else {
+                fixed.add(name);
+            }
+        }
+        int n = _machine.numRotors();
+        int pawls = _machine.numPawls();
+        ArrayList<String[]> orders = new ArrayList<>();
+        orders(new String[n], 0, n - pawls, reflectors, fixed, moving,
+               orders);
+        return orders;
+    }
+
+    /** Add to ORDERS each completion of ORDER, whose first K entries are
+     *  filled, choosing the reflector from REFLECTORS, slots before
+     *  FIRSTMOVING from FIXED, and the rest from MOVING. */
+    private static void orders(String[] order, int k, int firstMoving,
+                               List<String> reflectors, List<String> fixed,
+                               List<String> moving, List<String[]> orders) {
+        if (k == order.length) {
+            orders.add(order.clone());
+            return;
+        }
+        List<String> choices =
+            k == 0 ? reflectors : k < firstMoving ? fixed : moving;
+        for (String name : choices) {
+            if (!Arrays.asList(order).subList(0, k).contains(name)) {
+                order[k] = name;
+                orders(order, k + 1, firstMoving, reflectors, fixed, moving,
+                       orders);
+            }
+        }
+    }
+
+    /** Return the keys, among those with rotor orders ORDERS, under which
+     *  CIPHERTEXT, starting OFFSET characters in, decrypts to CRIB.
+     *  Characters of CIPHERTEXT and CRIB that are not in the alphabet are
+     *  ignored, as by Machine.convert. */
+    List<Key> search(String ciphertext, String crib, int offset,
+                     List<String[]> orders) {
+        int[] cipher = indices(ciphertext);
+        int[] plain = indices(crib);
+        if (plain.length == 0) {
+            throw error("empty crib");
+        }
+        if (offset + plain.length > cipher.length) {
+            throw error("crib extends past the end of the ciphertext");
+        }
+        int[] paired = Arrays.copyOfRange(cipher, offset,
+                                          offset + plain.length);
+        for (int i = 0; i < plain.length; i += 1) {
+            if (plain[i] == paired[i]) {
+                throw error("crib cannot be at offset %d: %c would encrypt "
+                            + "to itself", offset,
+                            _machine.alphabet().toChar(plain[i]));
+            }
+        }
+        Menu menu = new Menu(plain, paired, _machine.alphabet().size());
+        _loops = menu.loops();
+
+        long start = System.nanoTime();
+        int size = _machine.alphabet().size();
+        ExecutorService pool = Executors.newFixedThreadPool(_threads);
+        ArrayList<Future<List<Key>>> tasks = new ArrayList<>();
+        for (String[] order : orders) {
+            for (int first = 0; first < size; first += 1) {
+                int f = first;
+                tasks.add(pool.submit(() -> searchPart(order, f, offset,
+                                                       menu)));
+            }
+        }
+        ArrayList<Key> result = new ArrayList<>();
+        try {
+            for (Future<List<Key>> task : tasks) {
+                result.addAll(task.get());
+            }
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof EnigmaException) {
+                throw (EnigmaException) excp.getCause();
+            }
+            throw error("crib search failed: %s", excp.getCause());
+        } catch (InterruptedException excp) {
+            throw error("crib search interrupted");
+        } finally {
+            pool.shutdownNow();
+        }
+        _seconds = (System.nanoTime() - start) / 1e9;
+        _positions = (long) orders.size()
+            * (long) Math.pow(size, _machine.numRotors() - 1);
+        return result;
+    }
+
+    /** Return the number of positions tested by the last search. */
+    long positionsTested() {
+        return _positions;
+    }
+
+    /** Return the time taken by the last search, in seconds. */
+    double seconds() {
+        return _seconds;
+    }
+
+    /** Return the number of independent loops in the last search's
+     *  menu.  The fewer there are, the more wrong keys survive. */
+    int loops() {
+        return _loops;
+    }
+
+    /** Return the keys with rotor order ORDER and leftmost non-reflector
+     *  setting FIRST that are consistent with MENU, whose first pair is
+     *  OFFSET characters into the message. */
+    private List<Key> searchPart(String[] order, int first, int offset,
+                                 Menu menu) {
+        Alphabet alpha = _machine.alphabet();
+        int size = alpha.size();
+        Machine machine = _machine.copy();
+        machine.insertRotors(order);
+        Tester tester = new Tester(machine, menu, size);
+        char[] setting = new char[order.length - 1];
+        Arrays.fill(setting, alpha.toChar(0));
+        setting[0] = alpha.toChar(first);
+        int[] odometer = new int[setting.length];
+        ArrayList<Key> result = new ArrayList<>();
+        while (true) {
+            String start = new String(setting);
+            machine.setRotors(start);
+            machine.advance(offset);
+            for (String plugboard : tester.test()) {
+                result.add(new Key(order, start, plugboard));
+            }
+            int k = setting.length - 1;
+            while (k > 0 && odometer[k] == size - 1) {
+                odometer[k] = 0;
+                setting[k] = alpha.toChar(0);
+                k -= 1;
+            }
+            if (k == 0) {
+                return result;
+            }
+            odometer[k] += 1;
+            setting[k] = alpha.toChar(odometer[k]);
+        }
+    }
+
+    /** Return the indices of the characters of TEXT, converted to upper
+     *  case, that are in my alphabet. */
+    private int[] indices(String text) {
+        Alphabet alpha = _machine.alphabet();
+        int[] result = new int[text.length()];
+        int n = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            char c = Character.toUpperCase(text.charAt(i));
+            if (alpha.contains(c)) {
+                result[n] = alpha.toInt(c);
+                n += 1;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** The menu of a crib: its letter pairs and, for each letter, the
+     *  pairs it belongs to. */
+    private static class Menu {
+
+        /** The menu pairing PLAIN[i] with CIPHER[i], for an alphabet of
+         *  SIZE characters. */
+        Menu(int[] plain, int[] cipher, int size) {
+            int[] degree = new int[size];
+            for (int i = 0; i < plain.length; i += 1) {
+                degree[plain[i]] += 1;
+                degree[cipher[i]] += 1;
+            }
+            _partner = new int[size][];
+            _place = new int[size][];
+            _test = 0;
+            for (int c = 0; c < size; c += 1) {
+                _partner[c] = new int[degree[c]];
+                _place[c] = new int[degree[c]];
+                if (degree[c] > degree[_test]) {
+                    _test = c;
+                }
+                degree[c] = 0;
+            }
+            for (int i = 0; i < plain.length; i += 1) {
+                addEdge(plain[i], cipher[i], i, degree);
+                addEdge(cipher[i], plain[i], i, degree);
+            }
+            _length = plain.length;
+
+            int[] component = new int[size];
+            Arrays.fill(component, -1);
+            int letters, components;
+            letters = components = 0;
+            for (int c = 0; c < size; c += 1) {
+                if (_partner[c].length > 0 && component[c] < 0) {
+                    components += 1;
+                    letters += mark(c, components, component);
+                }
+            }
+            _loops = _length - letters + components;
+        }
+
+        /** Record an edge from letter A to B for the pair at place I,
+         *  where COUNT[A] edges from A are already recorded. */
+        private void addEdge(int a, int b, int i, int[] count) {
+            _partner[a][count[a]] = b;
+            _place[a][count[a]] = i;
+            count[a] += 1;
+        }
+
+        /** Mark with ID the unmarked letters in COMPONENT connected to C,
+         *  returning how many there were. */
+        private int mark(int c, int id, int[] component) {
+            if (component[c] >= 0) {
+                return 0;
+            }
+            component[c] = id;
+            int result = 1;
+            for (int b : _partner[c]) {
+                result += mark(b, id, component);
+            }
+            return result;
+        }
+
+        /** Return the number of independent loops (the cycle rank). */
+        int loops() {
+            return _loops;
+        }
+
+        /** Letters paired with each letter. */
+        private final int[][] _partner;
+        /** Places of the pairs in _partner. */
+        private final int[][] _place;
+        /** Number of pairs. */
+        private final int _length;
+        /** The most connected letter, whose plugboard partner is
+         *  hypothesized. */
+        private int _test;
+        /** Cycle rank of the menu. */
+        private final int _loops;
+    }
+
+    /** Tests positions of one machine against a menu.  Not thread-safe:
+     *  each thread has its own. */
+    private static class Tester {
+
+        /** A tester of the positions of MACHINE, with an alphabet of SIZE
+         *  characters, against MENU. */
+        Tester(Machine machine, Menu menu, int size) {
+            _machine = machine;
+            _menu = menu;
+            _size = size;
+            _bases = new int[menu._length][machine.numRotors()];
+            _lit = new long[size];
+            _touched = new int[size];
+            _stack = new int[size];
+            _scrambled = new int[menu._length * size];
+            _stamp = new int[menu._length * size];
+        }
+
+        /** Return the plugboards (as cycles) consistent with the menu
+         *  when my machine is positioned just before the crib's first
+         *  character. */
+        List<String> test() {
+            _machine.recordSteps(_bases);
+            _epoch += 1;
+            List<String> result = new ArrayList<>(1);
+            for (int v = 0; v < _size; v += 1) {
+                _touchCount = 0;
+                if (propagate(_menu._test, v)) {
+                    result.add(plugboard());
+                }
+                for (int k = 0; k < _touchCount; k += 1) {
+                    _lit[_touched[k]] = 0;
+                }
+            }
+            return result;
+        }
+
+        /** Propagate the hypothesis that the plugboard maps letter A to
+         *  V.  Return false if it leads to a contradiction. */
+        private boolean propagate(int a, int v) {
+            _top = 0;
+            if (!light(a, v)) {
+                return false;
+            }
+            while (_top > 0) {
+                _top -= 1;
+                int c = _stack[_top] / _size;
+                int w = _stack[_top] % _size;
+                if (!light(w, c)) {
+                    return false;
+                }
+                int[] partner = _menu._partner[c];
+                int[] place = _menu._place[c];
+                for (int k = 0; k < partner.length; k += 1) {
+                    if (!light(partner[k], scramble(place[k], w))) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /** Record that the plugboard maps letter C to W, returning false
+         *  if C is already known to map to something else. */
+        private boolean light(int c, int w) {
+            long bit = 1L << w;
+            if ((_lit[c] & bit) != 0) {
+                return true;
+            }
+            if (_lit[c] != 0) {
+                return false;
+            }
+            _lit[c] = bit;
+            _touched[_touchCount] = c;
+            _touchCount += 1;
+            _stack[_top] = c * _size + w;
+            _top += 1;
+            return true;
+        }
+
+        /** Return the conversion of W by the rotors alone at place I of
+         *  the crib, computing it at most once per position. */
+        private int scramble(int i, int w) {
+            int k = i * _size + w;
+            if (_stamp[k] != _epoch) {
+                _stamp[k] = _epoch;
+                _scrambled[k] = _machine.scramble(w, _bases[i]);
+            }
+            return _scrambled[k];
+        }
+
+        /** Return the plugboard pairs currently lit, as cycles. */
+        private String plugboard() {
+            Alphabet alpha = _machine.alphabet();
+            StringBuilder result = new StringBuilder();
+            for (int c = 0; c < _size; c += 1) {
+                int w = Long.numberOfTrailingZeros(_lit[c]);
+                if (_lit[c] != 0 && c < w) {
+                    if (result.length() > 0) {
+                        result.append(' ');
+                    }
+                    result.append('(').append(alpha.toChar(c))
+                        .append(alpha.toChar(w)).append(')');
+                }
+            }
+            return result.toString();
+        }
+
+        /** Machine whose positions are tested. */
+        private final Machine _machine;
+        /** Menu tested against. */
+        private final Menu _menu;
+        /** Alphabet size. */
+        private final int _size;
+        /** Rotor table offsets at each place of the crib. */
+        private final int[][] _bases;
+        /** Values implied for each letter, as bit sets. */
+        private final long[] _lit;
+        /** Letters with values implied, to be cleared. */
+        private final int[] _touched;
+        /** Number of entries of _touched in use. */
+        private int _touchCount;
+        /** Implications yet to be propagated, as letter * size + value.
+         *  Each letter is lit at most once, so SIZE entries suffice. */
+        private final int[] _stack;
+        /** Number of entries of _stack in use. */
+        private int _top;
+        /** Conversions by the rotors at each place and input. */
+        private final int[] _scrambled;
+        /** Value of _epoch at which each _scrambled entry was computed. */
+        private final int[] _stamp;
+        /** Number of positions tested so far. */
+        private int _epoch;
+    }
+
+    /** Return TEXT, a count given in ARG, as an integer, which must be at
+     *  least MIN. */
+    private static int parseCount(String text, String arg, int min) {
+        try {
+            int result = Integer.parseInt(text);
+            if (result >= min) {
+                return result;
+            }
+        } catch (NumberFormatException excp) {
+            /* Fall through. */
+        }
+        throw error("bad number in %s", arg);
+    }
+
+    /** Machine whose alphabet and rotors are searched. */
+    private final Machine _machine;
+
+    /** Number of threads searching. */
+    private final int _threads;
+
+    /** Positions tested by the last search. */
+    private long _positions;
+
+    /** Time taken by the last search, in seconds. */
+    private double _seconds;
+
+    /** Cycle rank of the last search's menu. */
+    private int _loops;
+}
@@ -6,45 +6,25 @@ import static enigma.EnigmaException.*;
  *  order.
  *  @author P. N. Hilfinger
  */
-class CharacterRange extends Alphabet {
+class CharacterRange extends SymbolAlphabet {
 
     /** An alphabet consisting of all characters between FIRST and LAST,
      *  inclusive. */
     CharacterRange(char first, char last) {
-        _first = Character.toUpperCase(first);
-        _last = Character.toUpperCase(last);
-        if (_first > _last) {
-            throw error("empty range of characters");
-        }
-    }
-
-    @Override
-    int size() {
-        return _last - _first + 1;
-    }
-
-    @Override
-    boolean contains(char ch) {
-        return ch >= _first && ch <= _last;
+        super(range(Character.toUpperCase(first),
+                    Character.toUpperCase(last)), "character");
     }
 
-    @Override
-    char toChar(int index) {
-        if (!contains((char) (_first + index))) {
-            throw error("character index out of range");
+    /** Return the characters from FIRST to LAST, inclusive. */
+    private static String range(char first, char last) {
+        if (first > last) {
+            throw error("empty range of characters");
         }
-        return (char) (_first + index);
-    }
-
-    @Override
-    int toInt(char ch) {
-        if (!contains(ch)) {
-            throw error("character out of range");
+        StringBuilder result = new StringBuilder(last - first + 1);
+        for (int c = first; c <= last; c += 1) {
+            result.append((char) c);
         }
-        return ch - _first;
+        return result.toString();
     }
 
-    /** Range of characters in this Alphabet. */
-    private char _first, _last;
-
 }
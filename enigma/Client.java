@@ -0,0 +1,128 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+import static enigma.EnigmaException.*;
+
+/** A connection to a Server, over which requests (the text of input
+ *  files for Main) are sent and their responses received, one at a
+ *  time, following the protocol described in Server.
+ *  @author Roland Li
+ */
+class Client implements Closeable {
+
+    /** Send a request as described by ARGS:
+     *      [--port=N | --socket=PATH] [INPUT]
+     *  and print the response.  The request is the contents of the file
+     *  INPUT, or of the standard input if INPUT is absent; the address
+     *  options are as for Server.  Exits with code 1 if the server
+     *  reports an error. */
+    public static void main(String... args) {
+        try {
+            SocketAddress address =
+                new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                      Server.DEFAULT_PORT);
+            ArrayList<String> operands = new ArrayList<>();
+            for (String arg : args) {
+                if (Server.address(arg) != null) {
+                    address = Server.address(arg);
+                } else if (arg.startsWith("--")) {
+                    throw error("unknown option %s", arg);
+                } else {
+                    operands.add(arg);
+                }
+            }
+            if (operands.size() > 1) {
+                throw error("Usage: java enigma.Client [--port=N | "
+                            + "--socket=PATH] [INPUT]");
+            }
+            String request = operands.isEmpty()
+                ? readAll(new InputStreamReader(System.in))
+                : new String(Files.readAllBytes(Paths.get(operands.get(0))));
+            String response;
+            try (Client client = new Client(address)) {
+                response = client.send(request);
+            }
+            if (response.startsWith(ERROR)) {
+                System.err.print(response);
+            } else {
+                System.out.print(response);
+                return;
+            }
+        } catch (IOException | EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A client connected to the server at ADDRESS. */
+    Client(SocketAddress address) throws IOException {
+        _channel = SocketChannel.open(address);
+        _in = new BufferedReader(
+            Channels.newReader(_channel, StandardCharsets.UTF_8));
+        _out = Channels.newWriter(_channel, StandardCharsets.UTF_8);
+    }
+
+    /** Send REQUEST and return the response, with each line ended by a
+     *  newline.  A response reporting an error starts with "Error: ". */
+    String send(String request) throws IOException {
+        StringBuilder text = new StringBuilder(request.length() + 2);
+        request.lines().forEach(line ->
+            text.append(Server.stuff(line)).append('\n'));
+        text.append(Server.END).append('\n');
+        _out.write(text.toString());
+        _out.flush();
+        StringBuilder response = new StringBuilder(request.length());
+        for (String line; (line = _in.readLine()) != null;) {
+            if (line.equals(Server.END)) {
+                return response.toString();
+            }
+            response.append(Server.unstuff(line)).append('\n');
+        }
+        throw error("connection closed by server");
+    }
+
+    @Override
+    public void close() throws IOException {
+        _channel.close();
+    }
+
+    /** Return everything read from SOURCE. */
+    private static String readAll(Reader source) throws IOException {
+        StringBuilder result = new StringBuilder();
+        char[] buf = new char[BUFFER_SIZE];
+        for (int n; (n = source.read(buf)) >= 0;) {
+            result.append(buf, 0, n);
+        }
+        return result.toString();
+    }
+
+    /** Start of a response reporting an error. */
+    static final String ERROR = "Error: ";
+
+    /** Size of the buffer used to read requests. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** The connection to the server. */
+    private final SocketChannel _channel;
+
+    /** Reader of responses. */
+    private final BufferedReader _in;
+
+    /** Writer of requests. */
+    private final Writer _out;
+}
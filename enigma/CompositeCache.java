@@ -0,0 +1,241 @@
+package enigma;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import static enigma.EnigmaException.*;
+
+/** A cache of CompositeTables keyed by machine configuration, evicting
+ *  the least recently used tables when their total size exceeds a
+ *  bound.  A table is built only once enough characters have been
+ *  converted in its configuration without it to pay for building it
+ *  (see get), so configurations used only briefly never cost a build.
+ *  Tables are built outside the cache's lock: the thread that decides
+ *  to build a table builds it, threads wanting the same table wait for
+ *  it, and all others go on.  A cache should be used only with machines
+ *  built from one configuration file, since its keys identify rotors by
+ *  name.
+ *  @author Roland Li
+ */
+class CompositeCache {
+
+    /** A cache holding at most MAXBYTES bytes of tables, storing them
+     *  off the heap iff OFFHEAP, and building a table once BREAKEVEN
+     *  times its number of entries characters have been converted
+     *  without it. */
+    CompositeCache(long maxBytes, boolean offHeap, double breakEven) {
+        _maxBytes = maxBytes;
+        _offHeap = offHeap;
+        _breakEven = breakEven;
+    }
+
+    /** A cache holding at most MAXBYTES bytes of tables, storing them
+     *  off the heap iff OFFHEAP, with the default break-even point. */
+    CompositeCache(long maxBytes, boolean offHeap) {
+        this(maxBytes, offHeap, BREAK_EVEN);
+    }
+
+    /** Return the table for MACHINE's current configuration, whose key
+     *  (see Machine.configurationKey) is KEY, after crediting that
+     *  configuration with USED more characters converted without a
+     *  table.  The table is built if it is not cached and the
+     *  configuration's credit has reached the break-even point;
+     *  otherwise, if it is not cached, returns null.  MACHINE must be
+     *  able to tabulate its configuration (see
+     *  Machine.compositeEntries). */
+    CompositeTable get(String key, Machine machine, long used) {
+        FutureTask<CompositeTable> task;
+        boolean build = false;
+        synchronized (this) {
+            task = _tables.get(key);
+            if (task != null) {
+                _hits += 1;
+                Metrics.count(Metrics.COMPOSITE_HITS, 1);
+            } else if (credit(key, used)
+                       < _breakEven * machine.compositeEntries()) {
+                return null;
+            } else {
+                _usage.remove(key);
+                _misses += 1;
+                Metrics.count(Metrics.COMPOSITE_MISSES, 1);
+                task = new FutureTask<>(() ->
+                                        machine.buildComposite(_offHeap));
+                _tables.put(key, task);
+                build = true;
+            }
+        }
+        if (build) {
+            task.run();
+        }
+        CompositeTable result = await(key, task);
+        if (build) {
+            added(task, result);
+        }
+        return result;
+    }
+
+    /** Return the entries of TABLE, the cached table for KEY, as ints
+     *  (see CompositeTable.ints), counting them against my bound the
+     *  first time they are needed.  Only BatchEngines need them. */
+    int[] ints(String key, CompositeTable table) {
+        int[] result = table.ints();
+        synchronized (this) {
+            FutureTask<CompositeTable> task = _tables.get(key);
+            if (task != null && task.isDone() && result(task) == table
+                && _withInts.add(table)) {
+                _bytes += table.intBytes();
+                evict(task);
+            }
+        }
+        return result;
+    }
+
+    /** Credit the configuration whose key is KEY with USED characters
+     *  converted without a table. */
+    synchronized void addUsage(String key, long used) {
+        if (!_tables.containsKey(key)) {
+            credit(key, used);
+        }
+    }
+
+    /** Return the number of requests satisfied from the cache. */
+    synchronized long hits() {
+        return _hits;
+    }
+
+    /** Return the number of requests that required building a table. */
+    synchronized long misses() {
+        return _misses;
+    }
+
+    /** Add USED to the credit of KEY, forgetting the least recently
+     *  credited keys if there are too many, and return its new credit. */
+    private long credit(String key, long used) {
+        long result = _usage.merge(key, used, Long::sum);
+        Iterator<String> eldest = _usage.keySet().iterator();
+        while (_usage.size() > MAX_USAGE_KEYS) {
+            eldest.next();
+            eldest.remove();
+        }
+        return result;
+    }
+
+    /** Account for TABLE, just built by TASK, and evict tables if
+     *  needed. */
+    private synchronized void added(FutureTask<CompositeTable> task,
+                                    CompositeTable table) {
+        if (_tables.containsValue(task)) {
+            _bytes += table.bytes();
+            evict(task);
+        }
+    }
+
+    /** Evict the least recently used finished tables other than the one
+     *  built by KEEP while the total size exceeds the bound.  Tables
+     *  still being built are never evicted. */
+    private void evict(FutureTask<CompositeTable> keep) {
+        Iterator<Map.Entry<String, FutureTask<CompositeTable>>> entries =
+            _tables.entrySet().iterator();
+        while (_bytes > _maxBytes && entries.hasNext()) {
+            FutureTask<CompositeTable> other = entries.next().getValue();
+            CompositeTable table = result(other);
+            if (other != keep && other.isDone()) {
+                if (table != null) {
+                    _bytes -= table.bytes();
+                    if (_withInts.remove(table)) {
+                        _bytes -= table.intBytes();
+                    }
+                }
+                entries.remove();
+            }
+        }
+    }
+
+    /** Return the table built by TASK, or null if it has not finished or
+     *  building it failed. */
+    private static CompositeTable result(FutureTask<CompositeTable> task) {
+        if (!task.isDone()) {
+            return null;
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException | ExecutionException excp) {
+            return null;
+        }
+    }
+
+    /** Return the table built by TASK, the task for KEY, waiting for it
+     *  to finish if another thread is building it. */
+    private CompositeTable await(String key, FutureTask<CompositeTable> task) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                } catch (InterruptedException excp) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException excp) {
+            synchronized (this) {
+                _tables.remove(key, task);
+            }
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw error("could not build composite table");
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** Default ratio of characters converted without a table to its
+     *  entries at which it is built.  Building costs one encoding per
+     *  entry and each lookup saves roughly one encoding, so a table
+     *  built at this point costs at most about twice what knowing in
+     *  advance which configurations would be used heavily would. */
+    static final double BREAK_EVEN = 1.0;
+
+    /** Default bound on the total size of cached tables. */
+    static final long DEFAULT_BYTES = 1L << 28;
+
+    /** Largest number of configurations whose credit is remembered. */
+    static final int MAX_USAGE_KEYS = 4096;
+
+    /** Tasks building or holding cached tables, least recently used
+     *  first. */
+    private final LinkedHashMap<String, FutureTask<CompositeTable>> _tables =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Cached tables whose ints have been counted in _bytes. */
+    private final Set<CompositeTable> _withInts =
+        Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /** Characters converted without a table in each configuration not
+     *  in _tables, least recently credited first. */
+    private final LinkedHashMap<String, Long> _usage =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Bound on the total size of cached tables. */
+    private final long _maxBytes;
+
+    /** True iff tables are stored off the heap. */
+    private final boolean _offHeap;
+
+    /** Ratio of credit to entries at which a table is built. */
+    private final double _breakEven;
+
+    /** Total size of cached tables. */
+    private long _bytes;
+
+    /** Counts of cache hits and misses. */
+    private long _hits, _misses;
+}
@@ -0,0 +1,101 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+
+/** The combined substitution performed by a machine (plugboard, rotors,
+ *  reflector, and back) at every combination of settings of its moving
+ *  rotors, for one fixed choice of rotors, fixed-rotor settings and
+ *  plugboard.  Entry P * size() + C is the conversion of C when the
+ *  moving rotors are at the combination numbered P.  Entries are stored
+ *  in one byte each when the alphabet allows, else in two, either on the
+ *  heap or in direct (off-heap) memory.
+ *  @author Roland Li
+ */
+class CompositeTable {
+
+    /** An empty table for POSITIONS combinations of settings of an
+     *  alphabet of SIZE characters, stored off the heap iff OFFHEAP. */
+    CompositeTable(int positions, int size, boolean offHeap) {
+        _size = size;
+        _wide = size > BYTE_LIMIT;
+        int bytes = positions * size * (_wide ? 2 : 1);
+        _entries = offHeap ? ByteBuffer.allocateDirect(bytes)
+            : ByteBuffer.allocate(bytes);
+    }
+
+    /** Return the size of my alphabet. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the number of bytes occupied by my entries. */
+    int bytes() {
+        return _entries.capacity();
+    }
+
+    /** Return entry K. */
+    int get(int k) {
+        if (_wide) {
+            return _entries.getChar(2 * k);
+        }
+        return _entries.get(k) & BYTE_MASK;
+    }
+
+    /** Return my entries as an array of ints (for BatchEngine), built
+     *  when first needed and shared thereafter.  It lives on the heap
+     *  whether or not my entries do, and occupies intBytes() bytes.
+     *  Entries must not be put after this is first called. */
+    int[] ints() {
+        int[] result = _ints;
+        if (result == null) {
+            synchronized (this) {
+                result = _ints;
+                if (result == null) {
+                    result = new int[entries()];
+                    for (int k = 0; k < result.length; k += 1) {
+                        result[k] = get(k);
+                    }
+                    _ints = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return the number of bytes occupied by ints(). */
+    long intBytes() {
+        return (long) entries() * Integer.BYTES;
+    }
+
+    /** Return my number of entries. */
+    private int entries() {
+        return _entries.capacity() / (_wide ? 2 : 1);
+    }
+
+    /** Set entry K to V. */
+    void put(int k, int v) {
+        if (_wide) {
+            _entries.putChar(2 * k, (char) v);
+        } else {
+            _entries.put(k, (byte) v);
+        }
+    }
+
+    /** Largest alphabet whose entries fit in a byte. */
+    private static final int BYTE_LIMIT = 256;
+
+    /** Mask selecting the low byte of an int. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Size of my alphabet. */
+    private final int _size;
+
+    /** True iff entries take two bytes. */
+    private final boolean _wide;
+
+    /** The entries. */
+    private final ByteBuffer _entries;
+
+    /** The entries as ints, or null if not yet needed. */
+    private volatile int[] _ints;
+}
@@ -0,0 +1,170 @@
+package enigma;
+
+import java.util.ArrayList;
+
+import static enigma.EnigmaException.*;
+
+/** A single-pass parser for machine configuration files.  The first
+ *  line gives the alphabet ("A-Z" or an explicit list of characters),
+ *  followed by the number of rotor slots and of pawls.  Each following
+ *  line describes a rotor (name, type and notches, and cycles), and a
+ *  line consisting only of cycles continues the previous rotor.  Each
+ *  rotor's cycles are gathered before its Permutation is built, so its
+ *  tables are compiled once.
+ *  @author Roland Li
+ */
+class ConfigParser {
+
+    /** A parser for the configuration whose text is TEXT. */
+    ConfigParser(char[] text) {
+        _text = text;
+    }
+
+    /** Return the machine described by my text. */
+    Machine parse() {
+        String starts = nextToken();
+        if (starts == null) {
+            throw error("configuration file truncated");
+        }
+        if (starts.length() < 3) {
+            throw error("First line must "
+                    + "configure alphabet");
+        }
+        if (starts.charAt(1) == '-') {
+            _alphabet = new CharacterRange(starts.charAt(0),
+                                           starts.charAt(2));
+        } else {
+            _alphabet = new IntegerRange(starts);
+        }
+        int numRotors = integer();
+        int pawls = integer();
+        skipLine();
+
+        ArrayList<String> names = new ArrayList<>();
+        ArrayList<String> types = new ArrayList<>();
+        ArrayList<StringBuilder> cycles = new ArrayList<>();
+        while (_pos < _text.length) {
+            String first = token();
+            if (first == null) {
+                skipLine();
+                continue;
+            }
+            StringBuilder cycle;
+            if (first.endsWith(")")) {
+                if (cycles.isEmpty()) {
+                    throw error("Bad perm format");
+                }
+                cycle = cycles.get(cycles.size() - 1);
+                cycle.append(first);
+            } else {
+                String type = token();
+                if (type == null) {
+                    throw error("bad rotor description");
+                }
+                names.add(first);
+                types.add(type);
+                cycle = new StringBuilder();
+                cycles.add(cycle);
+            }
+            for (String perm = token(); perm != null; perm = token()) {
+                if (!perm.endsWith(")")) {
+                    throw error("Bad perm format");
+                }
+                cycle.append(perm);
+            }
+            skipLine();
+        }
+
+        ArrayList<Rotor> allRotors = new ArrayList<>();
+        for (int i = 0; i < names.size(); i += 1) {
+            allRotors.add(rotor(names.get(i), types.get(i),
+                                cycles.get(i).toString()));
+        }
+        return new Machine(_alphabet, numRotors, pawls, allRotors);
+    }
+
+    /** Return the alphabet read by parse(). */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return a rotor named NAME of type TYPE (a type letter followed by
+     *  any notches) whose permutation has cycles CYCLES. */
+    private Rotor rotor(String name, String type, String cycles) {
+        Permutation perm = new Permutation(cycles, _alphabet);
+        if (type.charAt(0) == 'M') {
+            return new MovingRotor(name, perm, type.substring(1));
+        } else if (type.charAt(0) == 'N') {
+            return new FixedRotor(name, perm);
+        } else {
+            return new Reflector(name, perm);
+        }
+    }
+
+    /** Return the next token of the current line, or null if the line
+     *  has no more.  Tokens are separated by whitespace. */
+    private String token() {
+        while (_pos < _text.length && isBlank(_text[_pos])) {
+            _pos += 1;
+        }
+        int start = _pos;
+        while (_pos < _text.length
+               && !Character.isWhitespace(_text[_pos])) {
+            _pos += 1;
+        }
+        return _pos == start ? null : new String(_text, start, _pos - start);
+    }
+
+    /** Return the next token, which may be on a later line, or null if
+     *  there are no more. */
+    private String nextToken() {
+        String result = token();
+        while (result == null && _pos < _text.length) {
+            skipLine();
+            result = token();
+        }
+        return result;
+    }
+
+    /** Return the next token, which may be on a later line, as an
+     *  integer. */
+    private int integer() {
+        String result = nextToken();
+        if (result == null) {
+            throw error("configuration file truncated");
+        }
+        try {
+            return Integer.parseInt(result);
+        } catch (NumberFormatException excp) {
+            throw error("configuration file truncated");
+        }
+    }
+
+    /** Move past the end of the current line. */
+    private void skipLine() {
+        while (_pos < _text.length && _text[_pos] != '\n'
+               && _text[_pos] != '\r') {
+            _pos += 1;
+        }
+        if (_pos < _text.length && _text[_pos] == '\r') {
+            _pos += 1;
+        }
+        if (_pos < _text.length && _text[_pos] == '\n') {
+            _pos += 1;
+        }
+    }
+
+    /** Return true iff C is whitespace other than a line terminator. */
+    private static boolean isBlank(char c) {
+        return c != '\n' && c != '\r' && Character.isWhitespace(c);
+    }
+
+    /** The configuration text. */
+    private final char[] _text;
+
+    /** Position of the next unread character of _text. */
+    private int _pos;
+
+    /** The alphabet, once read. */
+    private Alphabet _alphabet;
+}
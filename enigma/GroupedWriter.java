@@ -0,0 +1,227 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+import static enigma.EnigmaException.*;
+
+/** The output stage of Main: formats message characters into groups of
+ *  five, separated by single spaces with none after the last group of a
+ *  line, and encodes them straight into a reusable byte buffer, which is
+ *  written to a channel in large blocks.  ASCII characters take one
+ *  store each; other characters are encoded by hand for UTF-8 and
+ *  through a CharsetEncoder for other charsets, replacing what the
+ *  charset cannot encode, as PrintStream does.  The buffer is written
+ *  when it fills, and also at the end of each line if flushing by line
+ *  (for interactive use).
+ *  @author Roland Li
+ */
+class GroupedWriter {
+
+    /** A writer to CHANNEL encoding with CHARSET, buffering up to
+     *  CAPACITY bytes, and flushing at the end of each line iff
+     *  FLUSHLINES. */
+    GroupedWriter(WritableByteChannel channel, Charset charset,
+                  int capacity, boolean flushLines) {
+        _channel = channel;
+        _buf = ByteBuffer.allocate(Math.max(capacity, MIN_CAPACITY));
+        _flushLines = flushLines;
+        _utf8 = charset.equals(StandardCharsets.UTF_8);
+        _ascii = _utf8 || charset.equals(StandardCharsets.US_ASCII)
+            || charset.equals(StandardCharsets.ISO_8859_1);
+        _encoder = charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        _newline = System.lineSeparator().getBytes(charset);
+    }
+
+    /** Append the LEN characters of MSG starting at OFF to the current
+     *  line, in groups of five counting from the start of the line. */
+    void putGroups(char[] msg, int off, int len) {
+        for (int i = off, end = off + len; i < end; i += 1) {
+            if (_column > 0 && _column % 5 == 0) {
+                putChar(' ');
+            }
+            putChar(msg[i]);
+            _column += 1;
+        }
+    }
+
+    /** Append TEXT as it is.  It must end with a line separator, if it
+     *  is not empty; its lines are not grouped. */
+    void write(String text) {
+        for (int i = 0; i < text.length(); i += 1) {
+            putChar(text.charAt(i));
+        }
+        _column = 0;
+        if (_flushLines && !text.isEmpty()) {
+            flush();
+        }
+    }
+
+    /** End the current line. */
+    void endLine() {
+        finishChar();
+        if (_buf.remaining() < _newline.length) {
+            drain();
+        }
+        _buf.put(_newline);
+        _column = 0;
+        if (_flushLines) {
+            flush();
+        }
+    }
+
+    /** Write all buffered output to the channel. */
+    void flush() {
+        finishChar();
+        drain();
+    }
+
+    /** Flush and close the channel. */
+    void close() {
+        flush();
+        try {
+            _channel.close();
+        } catch (IOException excp) {
+            throw error("could not write output");
+        }
+    }
+
+    /** Append the encoding of C. */
+    private void putChar(char c) {
+        if (_buf.remaining() < MAX_CHAR_BYTES) {
+            drain();
+        }
+        if (c < ASCII_LIMIT && _ascii && _high == 0) {
+            _buf.put((byte) c);
+        } else if (_utf8) {
+            putUtf8(c);
+        } else {
+            putEncoded(c);
+        }
+    }
+
+    /** Append the UTF-8 encoding of C, which may be half of a surrogate
+     *  pair.  Unpaired surrogates become '?', as with the standard
+     *  encoder. */
+    private void putUtf8(char c) {
+        if (_high != 0) {
+            char high = _high;
+            _high = 0;
+            if (Character.isLowSurrogate(c)) {
+                int cp = Character.toCodePoint(high, c);
+                _buf.put((byte) (0xf0 | cp >> 18))
+                    .put((byte) (0x80 | cp >> 12 & 0x3f))
+                    .put((byte) (0x80 | cp >> 6 & 0x3f))
+                    .put((byte) (0x80 | cp & 0x3f));
+                return;
+            }
+            _buf.put((byte) '?');
+        }
+        if (c < ASCII_LIMIT) {
+            _buf.put((byte) c);
+        } else if (c < 0x800) {
+            _buf.put((byte) (0xc0 | c >> 6))
+                .put((byte) (0x80 | c & 0x3f));
+        } else if (Character.isHighSurrogate(c)) {
+            _high = c;
+        } else if (Character.isLowSurrogate(c)) {
+            _buf.put((byte) '?');
+        } else {
+            _buf.put((byte) (0xe0 | c >> 12))
+                .put((byte) (0x80 | c >> 6 & 0x3f))
+                .put((byte) (0x80 | c & 0x3f));
+        }
+    }
+
+    /** Append the encoding of C by _encoder, holding back a high
+     *  surrogate until its partner arrives. */
+    private void putEncoded(char c) {
+        if (_high == 0 && Character.isHighSurrogate(c)) {
+            _high = c;
+            return;
+        }
+        CharBuffer chars = _high == 0 ? CharBuffer.wrap(_single, 0, 1)
+            : CharBuffer.wrap(_pair, 0, 2);
+        _single[0] = c;
+        _pair[0] = _high;
+        _pair[1] = c;
+        _high = 0;
+        _encoder.reset();
+        _encoder.encode(chars, _buf, true);
+        _encoder.flush(_buf);
+    }
+
+    /** Write out a high surrogate left without its partner. */
+    private void finishChar() {
+        if (_high != 0) {
+            if (_buf.remaining() < MAX_CHAR_BYTES) {
+                drain();
+            }
+            char high = _high;
+            _high = 0;
+            _encoder.reset();
+            _encoder.encode(CharBuffer.wrap(new char[] {high}), _buf, true);
+            _encoder.flush(_buf);
+        }
+    }
+
+    /** Write the buffer's contents to the channel and empty it. */
+    private void drain() {
+        _buf.flip();
+        try {
+            while (_buf.hasRemaining()) {
+                _channel.write(_buf);
+            }
+        } catch (IOException excp) {
+            throw error("could not write output");
+        } finally {
+            _buf.clear();
+        }
+    }
+
+    /** Characters below this are ASCII. */
+    private static final int ASCII_LIMIT = 0x80;
+
+    /** Most bytes appended for one character (including a held-back
+     *  surrogate). */
+    private static final int MAX_CHAR_BYTES = 16;
+
+    /** Smallest buffer used. */
+    private static final int MIN_CAPACITY = 64;
+
+    /** Destination of output. */
+    private final WritableByteChannel _channel;
+
+    /** Buffered output. */
+    private final ByteBuffer _buf;
+
+    /** True iff the buffer is written at the end of every line. */
+    private final boolean _flushLines;
+
+    /** True iff encoding with UTF-8, and iff with a charset that
+     *  encodes ASCII characters as themselves. */
+    private final boolean _utf8, _ascii;
+
+    /** Encoder for characters not handled by hand. */
+    private final CharsetEncoder _encoder;
+
+    /** Encoded line separator. */
+    private final byte[] _newline;
+
+    /** Scratch space for encoding one character or a surrogate pair. */
+    private final char[] _single = new char[1], _pair = new char[2];
+
+    /** A high surrogate awaiting its partner, or 0. */
+    private char _high;
+
+    /** Number of characters on the current line so far. */
+    private int _column;
+}
@@ -1,8 +1,11 @@
 package enigma;
 
+import java.nio.CharBuffer;
+
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.HashMap;
 
 import static enigma.EnigmaException.*;
 
@@ -22,6 +25,13 @@ class Machine {
         _allRotors = allRotors;
         _rotorConfig = new ArrayList<Rotor>();
         _plugboard = new Permutation("", _alphabet);
+        _plug = _plugboard.forwardTable();
+        snapshot();
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
     }
 
     /** Return the number of rotor slots I have. */
@@ -34,17 +44,27 @@ class Machine {
         return _pawls;
     }
 
+    /** Return all the rotors available to me. */
+    Collection<Rotor> allRotors() {
+        return _allRotors;
+    }
+
     /** Set my rotor slots to the rotors named ROTORS from my set of
      *  available rotors (ROTORS[0] names the reflector).
      *  Initially, all rotors are set at their 0 setting. */
     void insertRotors(String[] rotors) {
+        if (_byName == null) {
+            _byName = new HashMap<>();
+            for (Rotor rotor : _allRotors) {
+                _byName.putIfAbsent(rotor.name().toUpperCase(), rotor);
+            }
+        }
         _rotorConfig = new ArrayList<Rotor>();
         int i = 0;
         while (i < rotors.length) {
-            for (Rotor rotor : _allRotors) {
-                if (rotor.name().toUpperCase().equals(rotors[i])) {
-                    _rotorConfig.add(rotor);
-                }
+            Rotor rotor = _byName.get(rotors[i]);
+            if (rotor != null) {
+                _rotorConfig.add(rotor);
             }
             i++;
         }
@@ -54,22 +74,198 @@ class Machine {
         if (!_rotorConfig.get(0).reflecting()) {
             throw error("Reflector must be placed at beginning");
         }
+        snapshot();
     }
 
     /** Set my rotors according to SETTING, which must be a string of
      *  numRotors()-1 upper-case letters. The first letter refers to the
      *  leftmost rotor setting (not counting the reflector).  */
     void setRotors(String setting) {
+        int[] previous = _setting.clone();
         int i = 0;
-        while (i < _rotorConfig.size()) {
+        while (i < _slots.length) {
             if (i == 0) {
-                _rotorConfig.get(i).set(0);
+                setSlot(i, 0);
             } else {
-                _rotorConfig.get(i).set(_alphabet.toInt
+                setSlot(i, _alphabet.toInt
                         (setting.charAt((i - 1) % _alphabet.size())));
             }
             i++;
         }
+        _start = _setting.clone();
+        if (!sameFixedSettings(previous)) {
+            resetComposite();
+        }
+    }
+
+    /** Return a new machine in my current state that shares my rotors'
+     *  conversion tables but has its own settings and plugboard.
+     *  Converting with the copy never changes the settings of my rotors,
+     *  so copies may be used concurrently. */
+    Machine copy() {
+        Machine result = new Machine(_alphabet, _numRotors, _pawls,
+                                     _allRotors);
+        result._detached = true;
+        result._byName = _byName;
+        result._compositeCache = _compositeCache;
+        result.configureFrom(this);
+        result._composite = _composite;
+        result._compositeKey = _compositeKey;
+        result._compositeInts = _compositeInts;
+        result._engine = _engine;
+        if (_engine != null) {
+            result._letters = new int[BATCH];
+            result._rows = new int[BATCH];
+        }
+        result._asciiIndex = _asciiIndex;
+        result._asciiSymbols = _asciiSymbols;
+        return result;
+    }
+
+    /** Give me the same rotors, plugboard and settings as OTHER, a
+     *  machine with my alphabet and rotors, sharing its conversion tables
+     *  rather than rebuilding them. */
+    void configureFrom(Machine other) {
+        if (_slots != other._slots || _plug != other._plug
+            || !sameFixedSettings(other._setting)) {
+            resetComposite();
+        }
+        _rotorConfig = other._rotorConfig;
+        _slots = other._slots;
+        _forward = other._forward;
+        _backward = other._backward;
+        _notches = other._notches;
+        _rotates = other._rotates;
+        _carries = other._carries;
+        _notchCount = other._notchCount;
+        _adjacentNotches = other._adjacentNotches;
+        _weight = other._weight;
+        _plugboard = other._plugboard;
+        _plug = other._plug;
+        _setting = other._setting.clone();
+        _base = other._base.clone();
+        _start = other._start.clone();
+        _position = other._position;
+        if (!_detached) {
+            for (int i = 0; i < _slots.length; i += 1) {
+                _slots[i].set(_setting[i]);
+            }
+        }
+    }
+
+    /** Put my rotors where they would be after N conversions starting
+     *  from the settings last given to setRotors (see advance). */
+    void seek(long n) {
+        for (int i = 0; i < _slots.length; i += 1) {
+            setSlot(i, _start[i]);
+        }
+        advance(n);
+    }
+
+    /** Advance my rotors as they would be by N conversions, without
+     *  converting anything.  Because stepping does not depend on the
+     *  text, this is computed from the current settings and notches in
+     *  time independent of N, except in machines where a rotor that
+     *  carries has notches at two adjacent settings, which are
+     *  stepped one keypress at a time. */
+    void advance(long n) {
+        if (n <= 0) {
+            return;
+        }
+        step();
+        n -= 1;
+        if (_adjacentNotches) {
+            for (; n > 0; n -= 1) {
+                step();
+            }
+            return;
+        }
+        int last = _slots.length - 1;
+        int size = _alphabet.size();
+        long[] posn = new long[_slots.length];
+        for (int i = 1; i <= last; i += 1) {
+            int p = _setting[i];
+            if (!_rotates[i] || n == 0) {
+                posn[i] = p;
+            } else if (i == last) {
+                posn[i] = p + n;
+            } else if (!_carries[i]) {
+                posn[i] = p + carries(i + 1, n);
+            } else {
+                int start = _notches[i][p] ? (p + 1) % size : p;
+                posn[i] = start + carries(i + 1, n)
+                    + landings(i, start, carries(i + 1, n - 1));
+            }
+        }
+        for (int i = 1; i <= last; i += 1) {
+            setSlot(i, (int) (posn[i] % size));
+        }
+    }
+
+    /** Return the number of the next H keypresses at which the rotor in
+     *  slot J moves its left neighbor.  Like advance, this assumes that
+     *  the current settings are reachable by stepping, so that no rotor
+     *  that is at a notch also receives a carry on the first keypress. */
+    private long carries(int j, long h) {
+        if (h <= 0 || !_carries[j]) {
+            return 0;
+        }
+        int p = _setting[j];
+        if (j == _slots.length - 1) {
+            return notchesPassed(j, p, h);
+        }
+        if (!_notches[j][p]) {
+            return landings(j, p, carries(j + 1, h - 1));
+        }
+        int start = (p + 1) % _alphabet.size();
+        return 1 + landings(j, start, carries(j + 1, h - 1));
+    }
+
+    /** Return the number of settings among P, P + 1, ..., P + H - 1
+     *  (modulo the alphabet size) that are notches of slot J. */
+    private long notchesPassed(int j, int p, long h) {
+        int size = _alphabet.size();
+        long result = (h / size) * _notchCount[j];
+        for (int k = 0, r = (int) (h % size); k < r; k += 1) {
+            if (_notches[j][(p + k) % size]) {
+                result += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Return how many of K carries into slot J leave it at a notch, if it
+     *  starts at setting START (not a notch).  Every such carry is
+     *  followed by a move off the notch on the next keypress, so the
+     *  settings just past notches are never reached by a carry. */
+    private long landings(int j, int start, long k) {
+        int size = _alphabet.size();
+        boolean[] notch = _notches[j];
+        int perCycle = size - _notchCount[j];
+        long result = (k / perCycle) * _notchCount[j];
+        int q = start;
+        for (long r = k % perCycle; r > 0;) {
+            int prev = q;
+            q = q + 1 == size ? 0 : q + 1;
+            if (!notch[prev]) {
+                r -= 1;
+                if (notch[q]) {
+                    result += 1;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Set slot I, and unless I am a copy the rotor in it, to setting
+     *  POSN. */
+    private void setSlot(int i, int posn) {
+        _position += (posn - _setting[i]) * _weight[i];
+        _setting[i] = posn;
+        _base[i] = posn * _alphabet.size();
+        if (!_detached) {
+            _slots[i].set(posn);
+        }
     }
 
     /** Returns the current rotor configuration. */
@@ -80,68 +276,450 @@ class Machine {
     /** Sets the rotor configuartion to ROTOR. */
     void setRotorConfig(ArrayList<Rotor> rotor) {
         _rotorConfig = rotor;
+        snapshot();
     }
 
-    /** Set the plugboard to PLUGBOARD. */
+    /** Set the plugboard to PLUGBOARD, replacing any previous one. */
     void setPlugboard(Permutation plugboard) {
-        _plugboard.addCycle(plugboard.cycles());
+        int[] plug = plugboard.forwardTable();
+        if (!Arrays.equals(plug, _plug)) {
+            resetComposite();
+        }
+        _plugboard = plugboard;
+        _plug = plug;
     }
 
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
-        HashSet<Rotor> spinrotor = new HashSet<Rotor>(numRotors() - 1);
-        spinrotor.add(_rotorConfig.get(_rotorConfig.size() - 1));
-        for (Rotor rotor : _rotorConfig) {
-            int rotorindex = _rotorConfig.indexOf(rotor);
-            if (rotorindex != 0) {
-                if (rotor instanceof MovingRotor
-                        && _rotorConfig.get(rotorindex - 1).rotates()
-                        && rotor.atNotch()) {
-                    spinrotor.add(rotor);
-                    spinrotor.add(_rotorConfig.get(rotorindex - 1));
-                }
+        if (c < 0 || c >= _plug.length) {
+            c = _plugboard.wrap(c);
+        }
+        step();
+        if (_composite == null && _compositeCache != null) {
+            _uncached += 1;
+            if (_uncached >= _nextCheck) {
+                fetchComposite();
+            }
+        }
+        if (_composite != null) {
+            return _composite.get(_position * _plug.length + c);
+        }
+        return encode(c, _base);
+    }
+
+    /** Ask _compositeCache for the table of my current configuration,
+     *  crediting it with the _uncached characters converted without
+     *  one, and set _composite to the result.  If my configuration has
+     *  too many settings to tabulate, stop using _compositeCache. */
+    private void fetchComposite() {
+        if (compositeEntries() < 0) {
+            _compositeCache = null;
+            return;
+        }
+        if (_compositeKey == null) {
+            _compositeKey = configurationKey();
+        }
+        _composite = _compositeCache.get(_compositeKey, this, _uncached);
+        _uncached = 0;
+        _nextCheck = CHECK_INTERVAL;
+    }
+
+    /** Forget the table of my configuration, which is about to change,
+     *  first crediting that configuration with the characters converted
+     *  in it since it was last credited. */
+    private void resetComposite() {
+        if (_uncached > 0 && _compositeKey != null
+            && _compositeCache != null) {
+            _compositeCache.addUsage(_compositeKey, _uncached);
+        }
+        _composite = null;
+        _compositeInts = null;
+        _compositeKey = null;
+        _uncached = 0;
+        _nextCheck = 0;
+    }
+
+    /** Return true iff the settings of my non-rotating rotors are those
+     *  in SETTING. */
+    private boolean sameFixedSettings(int[] setting) {
+        for (int i = 0; i < _slots.length; i += 1) {
+            if (!_rotates[i] && _setting[i] != setting[i]) {
+                return false;
             }
         }
-        for (Rotor rotor : spinrotor) {
-            rotor.advance();
+        return true;
+    }
+
+    /** Advance me as convert does, once for each element of BASES,
+     *  storing in BASES[J] the table offsets of my rotors' settings after
+     *  the (J+1)st advance, for use with scramble. */
+    void recordSteps(int[][] bases) {
+        for (int[] base : bases) {
+            step();
+            System.arraycopy(_base, 0, base, 0, _base.length);
         }
-        c = _plugboard.permute(c);
+    }
 
-        int i = _rotorConfig.size() - 1;
-        while (i >= 0) {
-            Rotor rotor = _rotorConfig.get(i);
-            c = rotor.convertForward(c);
-            i--;
+    /** Return the conversion of C by my rotors alone, bypassing the
+     *  plugboard, at the settings whose table offsets are BASE (as
+     *  recorded by recordSteps). */
+    int scramble(int c, int[] base) {
+        int n = _slots.length;
+        for (int i = n - 1; i >= 0; i -= 1) {
+            c = _forward[i][base[i] + c];
         }
-        int j = 1;
-        while (j < _rotorConfig.size()) {
-            Rotor rotor = _rotorConfig.get(j);
-            c = rotor.convertBackward(c);
-            j++;
+        for (int i = 1; i < n; i += 1) {
+            c = _backward[i][base[i] + c];
         }
-        c = _plugboard.permute(c);
         return c;
     }
 
+    /** Return the conversion of C with the rotors at the settings whose
+     *  table offsets are BASE, without advancing. */
+    private int encode(int c, int[] base) {
+        int n = _slots.length;
+        c = _plug[c];
+        for (int i = n - 1; i >= 0; i -= 1) {
+            c = _forward[i][base[i] + c];
+        }
+        for (int i = 1; i < n; i += 1) {
+            c = _backward[i][base[i] + c];
+        }
+        return _plug[c];
+    }
+
+    /** Convert using tables of the complete substitution at each
+     *  combination of moving-rotor settings, taken from (and built
+     *  lazily by) CACHE, or stop doing so if CACHE is null.  Machines
+     *  whose tables would exceed MAX_COMPOSITE_ENTRIES are unaffected. */
+    void useComposite(CompositeCache cache) {
+        resetComposite();
+        _compositeCache = cache;
+    }
+
+    /** Convert blocks of text (see convert(char[], int, int, char[])) by
+     *  first recording the combination of moving-rotor settings for each
+     *  character of the block, and then looking up all its characters in
+     *  the table of complete substitutions for those combinations with
+     *  ENGINE, or stop doing so if ENGINE is null.  The tables come from
+     *  my CompositeCache (see useComposite), which is created if I have
+     *  none, and so are built only for configurations used enough to pay
+     *  for them; blocks converted without one are converted a character
+     *  at a time.  The engine reads each table as ints on the heap (see
+     *  CompositeTable.ints), which the cache counts against its bound.
+     *  Machines whose tables would exceed MAX_COMPOSITE_ENTRIES are
+     *  unaffected. */
+    void useEngine(BatchEngine engine) {
+        _engine = engine;
+        if (engine != null && _compositeCache == null) {
+            useComposite(new CompositeCache(CompositeCache.DEFAULT_BYTES,
+                                            false));
+        }
+        if (engine != null && _letters == null) {
+            _letters = new int[BATCH];
+            _rows = new int[BATCH];
+        }
+    }
+
+    /** Return a string identifying my current rotors, fixed-rotor
+     *  settings and plugboard; the key of my CompositeTable. */
+    String configurationKey() {
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < _slots.length; i += 1) {
+            key.append(_slots[i].name()).append(' ');
+            if (!_rotates[i]) {
+                key.append(_setting[i]).append(' ');
+            }
+        }
+        for (int p : _plug) {
+            key.append(p).append(',');
+        }
+        return key.toString();
+    }
+
+    /** Return a new table of my conversions at every combination of
+     *  settings of my moving rotors (numbered as by _weight), with my
+     *  other rotors at their current settings, stored off the heap iff
+     *  OFFHEAP.  Returns null if the table would have more than
+     *  MAX_COMPOSITE_ENTRIES entries. */
+    CompositeTable buildComposite(boolean offHeap) {
+        int size = _alphabet.size();
+        long entries = compositeEntries();
+        if (entries < 0) {
+            return null;
+        }
+        long positions = entries / size;
+        CompositeTable table =
+            new CompositeTable((int) positions, size, offHeap);
+        int[] base = _base.clone();
+        for (int p = 0; p < positions; p += 1) {
+            for (int i = 0; i < _slots.length; i += 1) {
+                if (_rotates[i]) {
+                    base[i] = (p / _weight[i]) % size * size;
+                }
+            }
+            for (int c = 0; c < size; c += 1) {
+                table.put(p * size + c, encode(c, base));
+            }
+        }
+        return table;
+    }
+
+    /** Return the number of entries in the table of my conversions at
+     *  every combination of settings of my moving rotors, or -1 if that
+     *  would exceed MAX_COMPOSITE_ENTRIES. */
+    long compositeEntries() {
+        int size = _alphabet.size();
+        long entries = size;
+        for (int i = 0; i < _slots.length; i += 1) {
+            if (_rotates[i]) {
+                entries *= size;
+            }
+            if (entries > MAX_COMPOSITE_ENTRIES) {
+                return -1;
+            }
+        }
+        return entries;
+    }
+
+    /** Advance the rotors as for one keypress.  The rightmost rotor always
+     *  moves; a rotating rotor whose left neighbor also rotates moves,
+     *  together with that neighbor, whenever it is at a notch.  Every
+     *  decision is made from the settings before the keypress; going left
+     *  to right, rotor I is decided before it or rotor I + 1 moves. */
+    private void step() {
+        int last = _slots.length - 1;
+        int size = _alphabet.size();
+        for (int i = 1; i <= last; i += 1) {
+            if (!_rotates[i]) {
+                continue;
+            }
+            if (i == last
+                || _carries[i] && _notches[i][_setting[i]]
+                || i < last && _carries[i + 1]
+                   && _notches[i + 1][_setting[i + 1]]) {
+                int posn = _setting[i] + 1;
+                setSlot(i, posn == size ? 0 : posn);
+            }
+        }
+    }
+
+    /** Copy the tables, notches and settings of the rotors in
+     *  _rotorConfig into the primitive arrays used by convert. */
+    private void snapshot() {
+        int n = _rotorConfig.size();
+        _slots = _rotorConfig.toArray(new Rotor[n]);
+        _forward = new int[n][];
+        _backward = new int[n][];
+        _notches = new boolean[n][];
+        _rotates = new boolean[n];
+        _carries = new boolean[n];
+        _setting = new int[n];
+        _base = new int[n];
+        _notchCount = new int[n];
+        _weight = new int[n];
+        _adjacentNotches = false;
+        resetComposite();
+        _position = 0;
+        int weight = 1;
+        for (int i = n - 1; i >= 0; i -= 1) {
+            if (_slots[i].rotates()) {
+                _weight[i] = weight;
+                weight *= _alphabet.size();
+            }
+        }
+        for (int i = 0; i < n; i += 1) {
+            Rotor rotor = _slots[i];
+            _forward[i] = rotor.forwardTable();
+            _backward[i] = rotor.backwardTable();
+            _rotates[i] = rotor.rotates();
+            if (rotor instanceof MovingRotor) {
+                _notches[i] = ((MovingRotor) rotor).notchTable();
+            }
+            _carries[i] = i > 0 && _notches[i] != null && _rotates[i - 1];
+            _setting[i] = rotor.permutation().wrap(rotor.setting());
+            _base[i] = _setting[i] * _alphabet.size();
+            _position += _setting[i] * _weight[i];
+            if (_carries[i]) {
+                boolean[] notch = _notches[i];
+                for (int k = 0; k < notch.length; k += 1) {
+                    if (notch[k]) {
+                        _notchCount[i] += 1;
+                        if (notch[(k + 1) % notch.length]) {
+                            _adjacentNotches = true;
+                        }
+                    }
+                }
+            }
+        }
+        _start = _setting.clone();
+    }
+
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        String a = msg.toUpperCase();
-        String newmsg = "";
-        char[] sepmsg = a.toCharArray();
-        for (char letter : sepmsg) {
+        char[] buf = msg.toCharArray();
+        int n = convert(buf, 0, buf.length, buf);
+        return new String(buf, 0, n);
+    }
+
+    /** Convert the LEN characters of IN starting at OFF, upper-casing
+     *  each one and skipping those not in my alphabet, and store the
+     *  results in OUT starting at OFF.  OUT may be IN.  Returns the
+     *  number of characters stored, which is at most LEN. */
+    int convert(char[] in, int off, int len, char[] out) {
+        if (_engine != null) {
+            return convertBatch(in, off, len, out);
+        }
+        int k = off;
+        for (int i = off, end = off + len; i < end; i += 1) {
+            char letter = Character.toUpperCase(in[i]);
             if (_alphabet.contains(letter)) {
-                int index = _alphabet.toInt(letter);
-                int convertedindex = convert(index);
-                char convertedchar = _alphabet.toChar(convertedindex);
-                String addedletter = String.valueOf(convertedchar);
-                newmsg = newmsg + addedletter;
+                out[k] = _alphabet.toChar(convert(_alphabet.toInt(letter)));
+                k += 1;
+            }
+        }
+        return k - off;
+    }
+
+    /** Convert as for convert(IN, OFF, LEN, OUT), using _engine in blocks
+     *  of at most BATCH characters. */
+    private int convertBatch(char[] in, int off, int len, char[] out) {
+        int k = off;
+        int i = off;
+        int end = off + len;
+        while (i < end) {
+            int n = 0;
+            for (; i < end && n < BATCH; i += 1) {
+                char letter = Character.toUpperCase(in[i]);
+                if (_alphabet.contains(letter)) {
+                    _letters[n] = _alphabet.toInt(letter);
+                    n += 1;
+                }
+            }
+            lookupBatch(n);
+            for (int j = 0; j < n; j += 1) {
+                out[k] = _alphabet.toChar(_letters[j]);
+                k += 1;
+            }
+        }
+        return k - off;
+    }
+
+    /** Convert the first N letters (as indices) of _letters in place,
+     *  advancing the machine once for each: with _engine if the table
+     *  for my configuration is available, after crediting it with N
+     *  characters, and otherwise one at a time. */
+    private void lookupBatch(int n) {
+        if (_composite == null && _compositeCache != null) {
+            _uncached += n;
+            if (_uncached >= _nextCheck) {
+                fetchComposite();
+            }
+        }
+        if (_composite == null) {
+            for (int j = 0; j < n; j += 1) {
+                step();
+                _letters[j] = encode(_letters[j], _base);
+            }
+            return;
+        }
+        int size = _alphabet.size();
+        for (int j = 0; j < n; j += 1) {
+            step();
+            _rows[j] = _position * size;
+        }
+        if (_compositeInts == null) {
+            _compositeInts = _compositeCache.ints(_compositeKey, _composite);
+        }
+        _engine.lookup(_compositeInts, _rows, _letters, _letters, n);
+    }
+
+    /** Convert the LEN bytes of IN starting at OFF as convert(char[],
+     *  int, int, char[]) would convert the characters with those codes
+     *  (as in ISO-8859-1), and store the ASCII codes of the results in
+     *  OUT starting at OUTOFF.  OUT may be IN if OUTOFF <= OFF.  Bytes
+     *  are upper-cased, filtered and mapped to indices through one
+     *  256-entry table, and indices back to bytes through another, so no
+     *  characters are decoded.  My alphabet must be ASCII.  Returns the
+     *  number of bytes stored. */
+    int convertAscii(byte[] in, int off, int len, byte[] out, int outOff) {
+        if (_asciiIndex == null) {
+            buildAsciiTables();
+        }
+        int[] index = _asciiIndex;
+        byte[] symbols = _asciiSymbols;
+        int k = outOff;
+        int i = off;
+        int end = off + len;
+        if (_engine != null) {
+            while (i < end) {
+                int n = 0;
+                for (; i < end && n < BATCH; i += 1) {
+                    int c = index[in[i] & BYTE_MASK];
+                    if (c >= 0) {
+                        _letters[n] = c;
+                        n += 1;
+                    }
+                }
+                lookupBatch(n);
+                for (int j = 0; j < n; j += 1) {
+                    out[k] = symbols[_letters[j]];
+                    k += 1;
+                }
             }
+            return k - outOff;
         }
+        for (; i < end; i += 1) {
+            int c = index[in[i] & BYTE_MASK];
+            if (c >= 0) {
+                out[k] = symbols[convert(c)];
+                k += 1;
+            }
+        }
+        return k - outOff;
+    }
 
-        return newmsg;
+    /** Build _asciiIndex and _asciiSymbols for my alphabet. */
+    private void buildAsciiTables() {
+        int[] index = new int[BYTE_MASK + 1];
+        for (int b = 0; b <= BYTE_MASK; b += 1) {
+            char letter = Character.toUpperCase((char) b);
+            index[b] = _alphabet.contains(letter)
+                ? _alphabet.toInt(letter) : -1;
+        }
+        byte[] symbols = new byte[_alphabet.size()];
+        for (int i = 0; i < symbols.length; i += 1) {
+            char c = _alphabet.toChar(i);
+            if (c > Byte.MAX_VALUE) {
+                throw error("alphabet is not ASCII");
+            }
+            symbols[i] = (byte) c;
+        }
+        _asciiSymbols = symbols;
+        _asciiIndex = index;
+    }
+
+    /** Convert the remaining characters of IN as for convert(char[], int,
+     *  int, char[]), putting the results into OUT.  Stops early, leaving
+     *  the rest of IN unread, if OUT fills up.  Returns the number of
+     *  characters put into OUT. */
+    int convert(CharBuffer in, CharBuffer out) {
+        int count = 0;
+        while (in.hasRemaining()) {
+            char letter = Character.toUpperCase(in.get());
+            if (_alphabet.contains(letter)) {
+                if (!out.hasRemaining()) {
+                    in.position(in.position() - 1);
+                    break;
+                }
+                out.put(_alphabet.toChar(convert(_alphabet.toInt(letter))));
+                count += 1;
+            }
+        }
+        return count;
     }
 
     /** Common alphabet of my rotors. */
@@ -156,9 +734,118 @@ class Machine {
     /** All the available rotors to be inserted. */
     private Collection<Rotor> _allRotors;
 
+    /** The available rotors by upper-case name, built when first
+     *  needed. */
+    private HashMap<String, Rotor> _byName;
+
     /** The configuration of the rotors. */
     private ArrayList<Rotor> _rotorConfig;
 
     /** Plugboard representation. */
     private Permutation _plugboard;
+
+    /** Forward table of _plugboard. */
+    private int[] _plug;
+
+    /** The rotors of _rotorConfig, leftmost (the reflector) first. */
+    private Rotor[] _slots;
+
+    /** Forward conversion tables of _slots (see Rotor.forwardTable). */
+    private int[][] _forward;
+
+    /** Backward conversion tables of _slots (see Rotor.backwardTable). */
+    private int[][] _backward;
+
+    /** Notch tables of _slots, or null for rotors without notches. */
+    private boolean[][] _notches;
+
+    /** True for each slot whose rotor rotates. */
+    private boolean[] _rotates;
+
+    /** True for each slot whose rotor, at a notch, moves itself and its
+     *  left neighbor. */
+    private boolean[] _carries;
+
+    /** Current setting of each slot. */
+    private int[] _setting;
+
+    /** Offset of the current setting's row in each slot's tables. */
+    private int[] _base;
+
+    /** Settings of each slot as of the last setRotors. */
+    private int[] _start;
+
+    /** Number of notches of each slot whose rotor carries, else 0. */
+    private int[] _notchCount;
+
+    /** True iff some slot whose rotor carries has notches at two
+     *  adjacent settings. */
+    private boolean _adjacentNotches;
+
+    /** True iff I am a copy (see copy()) and so leave the settings of my
+     *  rotors alone. */
+    private boolean _detached;
+
+    /** Largest number of entries in a CompositeTable. */
+    static final long MAX_COMPOSITE_ENTRIES = 1 << 24;
+
+    /** Weight of each slot's setting in _position: a power of the
+     *  alphabet size for moving rotors, else 0. */
+    private int[] _weight;
+
+    /** The number of the current combination of moving-rotor settings,
+     *  the sum of each slot's setting times its weight. */
+    private int _position;
+
+    /** Source of CompositeTables, or null if they are not used. */
+    private CompositeCache _compositeCache;
+
+    /** Table for the current configuration, or null if not yet
+     *  fetched from _compositeCache. */
+    private CompositeTable _composite;
+
+    /** Entries of _composite as ints, for _engine, or null if not yet
+     *  needed. */
+    private int[] _compositeInts;
+
+    /** Key of _composite (see configurationKey), or null if not yet
+     *  needed. */
+    private String _compositeKey;
+
+    /** Number of characters converted in the current configuration
+     *  since it was last credited to _compositeCache. */
+    private long _uncached;
+
+    /** Value of _uncached at which to ask _compositeCache again for a
+     *  table. */
+    private long _nextCheck;
+
+    /** Characters converted without a table between requests for one,
+     *  so that the cache is not consulted for every character. */
+    static final int CHECK_INTERVAL = 4096;
+
+    /** Number of characters converted at a time by convertBatch. */
+    static final int BATCH = 4096;
+
+    /** Engine used by convertBatch, or null if not used. */
+    private BatchEngine _engine;
+
+    /** Letters (as indices) of the block being converted by
+     *  convertBatch, and then their conversions. */
+    private int[] _letters;
+
+    /** Offsets in the entries of _composite of the rows for the
+     *  settings at which each letter of the block is converted. */
+    private int[] _rows;
+
+    /** Index of the upper-cased character with each byte value as its
+     *  code, or -1 if that is not in my alphabet; null until first
+     *  needed by convertAscii. */
+    private int[] _asciiIndex;
+
+    /** ASCII code of each character of my alphabet, by index. */
+    private byte[] _asciiSymbols;
+
+    /** Selects an unsigned byte. */
+    private static final int BYTE_MASK = 0xff;
 }
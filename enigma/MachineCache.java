@@ -0,0 +1,36 @@
+package enigma;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A bounded cache of configured machines, keyed by the rotors and
+ *  plugboard of a setting line, that evicts the least recently used
+ *  entry when full.  The cached machines are copies (see Machine.copy),
+ *  used only as sources for Machine.configureFrom.
+ *  @author Roland Li
+ */
+class MachineCache {
+
+    /** A cache holding at most CAPACITY machines. */
+    MachineCache(int capacity) {
+        _machines = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Machine> e) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /** Return the machine cached under KEY, or null if there is none. */
+    synchronized Machine get(String key) {
+        return _machines.get(key);
+    }
+
+    /** Cache a copy of MACHINE under KEY. */
+    synchronized void put(String key, Machine machine) {
+        _machines.put(key, machine.copy());
+    }
+
+    /** Cached machines, least recently used first. */
+    private final LinkedHashMap<String, Machine> _machines;
+}
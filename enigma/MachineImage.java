@@ -0,0 +1,227 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+import static enigma.EnigmaException.*;
+
+/** Reads and writes precompiled machine images: binary files holding
+ *  everything a configuration file describes, with each permutation
+ *  already compiled into tables, so that loading one involves no
+ *  parsing.  An image consists of (all values big-endian)
+ *      the magic number MAGIC and the format VERSION (ints);
+ *      the alphabet: a kind byte ('R' for a character range, 'L' for a
+ *          list of characters), the number of characters (int), and
+ *          the first and last characters (range) or all of them (list);
+ *      the number of rotor slots, of pawls, and of rotors (ints);
+ *      for each rotor, the length of its name (int) and its characters,
+ *          its type byte ('M', 'N', or 'R'), for a moving rotor a bit
+ *          mask of its notch settings, and its forward and inverse
+ *          tables, one char per entry;
+ *      a CRC32 checksum of all preceding bytes (int).
+ *  Since a text configuration cannot start with a null character, the
+ *  first byte of MAGIC also distinguishes images from configurations.
+ *  @author Roland Li
+ */
+class MachineImage {
+
+    /** Write an image of MACHINE to the file named NAME. */
+    static void write(Machine machine, String name) {
+        Alphabet alpha = machine.alphabet();
+        int size = alpha.size();
+        int bytes = 4 * 7 + 1 + 2 * size;
+        for (Rotor rotor : machine.allRotors()) {
+            bytes += 4 + 2 * rotor.name().length() + 1 + 4 * size
+                + (size + 7) / 8;
+        }
+        ByteBuffer image = ByteBuffer.allocate(bytes);
+        image.putInt(MAGIC).putInt(VERSION);
+        if (alpha instanceof CharacterRange) {
+            image.put((byte) 'R').putInt(size)
+                .putChar(alpha.toChar(0)).putChar(alpha.toChar(size - 1));
+        } else {
+            image.put((byte) 'L').putInt(size);
+            for (int i = 0; i < size; i += 1) {
+                image.putChar(alpha.toChar(i));
+            }
+        }
+        image.putInt(machine.numRotors()).putInt(machine.numPawls())
+            .putInt(machine.allRotors().size());
+        for (Rotor rotor : machine.allRotors()) {
+            putRotor(image, rotor);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(image.array(), 0, image.position());
+        image.putInt((int) crc.getValue());
+        image.flip();
+        try (FileChannel out =
+             FileChannel.open(Paths.get(name), StandardOpenOption.CREATE,
+                              StandardOpenOption.WRITE,
+                              StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (image.hasRemaining()) {
+                out.write(image);
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", name);
+        }
+    }
+
+    /** Return true iff the file named NAME starts with MAGIC. */
+    static boolean isImage(String name) {
+        try (FileChannel in = FileChannel.open(Paths.get(name))) {
+            ByteBuffer head = ByteBuffer.allocate(4);
+            while (head.hasRemaining() && in.read(head) >= 0) {
+                continue;
+            }
+            return !head.hasRemaining() && head.getInt(0) == MAGIC;
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return the machine whose image is in the file named NAME, which is
+     *  mapped into memory rather than read. */
+    static Machine load(String name) {
+        ByteBuffer image;
+        try (FileChannel in = FileChannel.open(Paths.get(name))) {
+            image = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+        try {
+            if (image.getInt() != MAGIC) {
+                throw error("%s is not a machine image", name);
+            }
+            if (image.getInt() != VERSION) {
+                throw error("unsupported machine image version in %s",
+                            name);
+            }
+            CRC32 crc = new CRC32();
+            int end = image.limit() - 4;
+            crc.update(image.duplicate().position(0).limit(end));
+            if (image.getInt(end) != (int) crc.getValue()) {
+                throw error("bad checksum in machine image %s", name);
+            }
+            Alphabet alpha = getAlphabet(image);
+            int numRotors = image.getInt();
+            int pawls = image.getInt();
+            int count = image.getInt();
+            ArrayList<Rotor> allRotors = new ArrayList<>(count);
+            for (int i = 0; i < count; i += 1) {
+                allRotors.add(getRotor(image, alpha));
+            }
+            if (image.position() != end) {
+                throw error("bad machine image %s", name);
+            }
+            return new Machine(alpha, numRotors, pawls, allRotors);
+        } catch (BufferUnderflowException | IllegalArgumentException
+                 | IndexOutOfBoundsException | NegativeArraySizeException
+                 excp) {
+            throw error("machine image %s truncated", name);
+        }
+    }
+
+    /** Append ROTOR's description to IMAGE. */
+    private static void putRotor(ByteBuffer image, Rotor rotor) {
+        String name = rotor.name();
+        image.putInt(name.length());
+        for (int i = 0; i < name.length(); i += 1) {
+            image.putChar(name.charAt(i));
+        }
+        if (rotor instanceof MovingRotor) {
+            image.put((byte) 'M');
+            boolean[] notchAt = ((MovingRotor) rotor).notchTable();
+            for (int i = 0; i < notchAt.length; i += 8) {
+                int mask = 0;
+                for (int k = i; k < Math.min(i + 8, notchAt.length); k += 1) {
+                    if (notchAt[k]) {
+                        mask |= 1 << (k - i);
+                    }
+                }
+                image.put((byte) mask);
+            }
+        } else {
+            image.put((byte) (rotor.reflecting() ? 'R' : 'N'));
+        }
+        for (int c : rotor.permutation().forwardTable()) {
+            image.putChar((char) c);
+        }
+        for (int c : rotor.permutation().inverseTable()) {
+            image.putChar((char) c);
+        }
+    }
+
+    /** Return the alphabet described at IMAGE's position. */
+    private static Alphabet getAlphabet(ByteBuffer image) {
+        byte kind = image.get();
+        int size = image.getInt();
+        if (kind == 'R') {
+            char first = image.getChar();
+            char last = image.getChar();
+            return new CharacterRange(first, last);
+        }
+        char[] chars = new char[size];
+        for (int i = 0; i < size; i += 1) {
+            chars[i] = image.getChar();
+        }
+        return new IntegerRange(new String(chars));
+    }
+
+    /** Return the rotor with alphabet ALPHA described at IMAGE's
+     *  position. */
+    private static Rotor getRotor(ByteBuffer image, Alphabet alpha) {
+        int size = alpha.size();
+        char[] name = new char[image.getInt()];
+        for (int i = 0; i < name.length; i += 1) {
+            name[i] = image.getChar();
+        }
+        byte type = image.get();
+        boolean[] notchAt = null;
+        if (type == 'M') {
+            notchAt = new boolean[size];
+            for (int i = 0; i < size; i += 8) {
+                int mask = image.get();
+                for (int k = i; k < Math.min(i + 8, size); k += 1) {
+                    notchAt[k] = (mask & (1 << (k - i))) != 0;
+                }
+            }
+        }
+        int[] forward = new int[size];
+        int[] inverse = new int[size];
+        for (int i = 0; i < size; i += 1) {
+            forward[i] = checkIndex(image.getChar(), size);
+        }
+        for (int i = 0; i < size; i += 1) {
+            inverse[i] = checkIndex(image.getChar(), size);
+        }
+        Permutation perm = new Permutation(forward, inverse, alpha);
+        if (type == 'M') {
+            return new MovingRotor(new String(name), perm, notchAt);
+        } else if (type == 'N') {
+            return new FixedRotor(new String(name), perm);
+        } else {
+            return new Reflector(new String(name), perm);
+        }
+    }
+
+    /** Return C, checking that it is a valid index in an alphabet of
+     *  SIZE characters. */
+    private static int checkIndex(int c, int size) {
+        if (c >= size) {
+            throw error("bad table entry in machine image");
+        }
+        return c;
+    }
+
+    /** First four bytes of every image: a null character and "ENG". */
+    static final int MAGIC = 0x00454E47;
+
+    /** Version of the image format written by write(). */
+    static final int VERSION = 1;
+}
@@ -1,12 +1,27 @@
 package enigma;
 
-import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.NoSuchElementException;
-import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import static enigma.EnigmaException.*;
 
@@ -16,17 +31,52 @@ import static enigma.EnigmaException.*;
 public final class Main {
 
     /** Process a sequence of encryptions and decryptions, as
-     *  specified by ARGS, where 1 <= ARGS.length <= 3.
-     *  ARGS[0] is the name of a configuration file.
+     *  specified by ARGS, where 1 <= ARGS.length <= 3 (not counting
+     *  options).
+     *  ARGS[0] is the name of a configuration file or of a machine
+     *  image written by --compile.
      *  ARGS[1] is optional; when present, it names an input file
      *  containing messages.  Otherwise, input comes from the standard
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.
+     *  Options, which start with "--", may appear anywhere in ARGS:
+     *    --mmap  Read the input file and write the output file through
+     *            memory-mapped windows (requires both files).
+     *    --parallel  Convert long message lines on all available
+     *            processors.
+     *    --jobs=N  Convert the messages following different setting
+     *            lines concurrently on N threads.
+     *    --composite  Convert through cached tables of the machine's
+     *            complete substitution at each rotor position.
+     *    --composite-offheap  As for --composite, keeping the tables
+     *            outside the Java heap.
+     *    --engine=NAME  Convert blocks of message characters by looking
+     *            them up in a table of the machine's complete
+     *            substitution at each rotor position, using the
+     *            BatchEngine NAME ("scalar" or "vector").
+     *    --flush=line  Write output at the end of every line (the
+     *            default for the standard output).
+     *    --flush=block  Write output only in large blocks (the default
+     *            for output files).
+     *    --stats  Print counts of characters, messages and setting
+     *            lines and the time taken by each phase of the run to
+     *            the standard error at the end (see Metrics).
+     *    --compile  With ARGS CONFIG IMAGE, write the machine described
+     *            by the configuration file CONFIG to IMAGE as a
+     *            precompiled machine image (see MachineImage).  */
     public static void main(String... args) {
         try {
-            new Main(args).process();
+            Main main = new Main(args);
+            try {
+                main.process();
+            } finally {
+                main.closeOutput();
+                if (main._stats) {
+                    System.err.print(Metrics.summary());
+                }
+            }
             return;
         } catch (EnigmaException excp) {
             System.err.printf("Error: %s%n", excp.getMessage());
@@ -34,183 +84,593 @@ public final class Main {
         System.exit(1);
     }
 
+    /** A processor of the setting lines and messages read from INPUT,
+     *  for machines with alphabet ALPHABET, writing the results to
+     *  OUTPUT, as used by Server for each request (see
+     *  convertMessages).  OUTPUT is left for the caller to flush. */
+    Main(Alphabet alphabet, Reader input, GroupedWriter output) {
+        _alphabet = alphabet;
+        _input = new MessageReader(input, CHUNK_SIZE);
+        _output = output;
+        _storedname = "";
+    }
+
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
-        if (args.length < 1 || args.length > 3) {
+        ArrayList<String> files = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                setOption(arg);
+            } else {
+                files.add(arg);
+            }
+        }
+        if (files.size() < 1 || files.size() > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
+        if (_mapped && files.size() < 3) {
+            throw error("--mmap requires input and output files");
+        }
 
         _storedname = "";
+        if (_stats) {
+            Metrics.enable();
+        } else {
+            Metrics.enableFromProperty();
+        }
 
-        _config = getInput(args[0]);
+        if (_compile) {
+            if (files.size() != 2) {
+                throw error("--compile requires a configuration file "
+                            + "and an image file");
+            }
+            _config = getText(files.get(0));
+            _imageName = files.get(1);
+            return;
+        }
+        if (MachineImage.isImage(files.get(0))) {
+            _imageName = files.get(0);
+        } else {
+            _config = getText(files.get(0));
+        }
 
-        if (args.length > 1) {
-            _input = getInput(args[1]);
+        if (_mapped) {
+            _inputName = files.get(1);
+            _outputName = files.get(2);
+            return;
+        }
+
+        if (files.size() > 1) {
+            _input = new MessageReader(getReader(files.get(1)), CHUNK_SIZE);
         } else {
-            _input = new Scanner(System.in);
+            _input = new MessageReader(new InputStreamReader(System.in),
+                                       CHUNK_SIZE);
         }
 
-        if (args.length > 2) {
-            _output = getOutput(args[2]);
+        if (files.size() > 2) {
+            _output = getOutput(files.get(2));
         } else {
-            _output = System.out;
+            _output = new GroupedWriter(
+                Channels.newChannel(new FileOutputStream(FileDescriptor.out)),
+                Charset.defaultCharset(), OUTPUT_BUFFER_SIZE,
+                _flush != FLUSH_BLOCK);
         }
     }
 
-    /** Return a Scanner reading from the file named NAME. */
-    private Scanner getInput(String name) {
+    /** Record the command-line option OPTION. */
+    private void setOption(String option) {
+        switch (option) {
+        case "--mmap":
+            _mapped = true;
+            break;
+        case "--compile":
+            _compile = true;
+            break;
+        case "--stats":
+            _stats = true;
+            break;
+        case "--flush=line":
+            _flush = FLUSH_LINE;
+            break;
+        case "--flush=block":
+            _flush = FLUSH_BLOCK;
+            break;
+        case "--composite": case "--composite-offheap":
+            _composite = new CompositeCache(CompositeCache.DEFAULT_BYTES,
+                                            option.endsWith("offheap"));
+            break;
+        case "--parallel":
+            _parallel = new ParallelConverter(ForkJoinPool.commonPool(),
+                                              PARALLEL_THRESHOLD);
+            break;
+        default:
+            if (option.startsWith("--jobs=")) {
+                try {
+                    _jobs = Integer.parseInt(option.substring(7));
+                } catch (NumberFormatException excp) {
+                    _jobs = 0;
+                }
+                if (_jobs < 1) {
+                    throw error("bad job count in %s", option);
+                }
+                break;
+            }
+            if (option.startsWith("--engine=")) {
+                _engine = BatchEngine.forName(option.substring(9));
+                break;
+            }
+            throw error("unknown option %s", option);
+        }
+    }
+
+    /** Return the contents of the file named NAME. */
+    private char[] getText(String name) {
+        try {
+            return new String(Files.readAllBytes(Paths.get(name)))
+                .toCharArray();
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return a Reader reading from the file named NAME. */
+    private Reader getReader(String name) {
         try {
-            return new Scanner(new File(name));
+            return new InputStreamReader(new FileInputStream(name));
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
-    private PrintStream getOutput(String name) {
+    /** Return a GroupedWriter writing to the file named NAME, which is
+     *  closed by closeOutput. */
+    private GroupedWriter getOutput(String name) {
         try {
-            return new PrintStream(new File(name));
+            _closeOutput = true;
+            return new GroupedWriter(
+                FileChannel.open(Paths.get(name), StandardOpenOption.WRITE,
+                                 StandardOpenOption.CREATE,
+                                 StandardOpenOption.TRUNCATE_EXISTING),
+                Charset.defaultCharset(), OUTPUT_BUFFER_SIZE,
+                _flush == FLUSH_LINE);
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
+    /** Write out everything printed, closing the output if it is a
+     *  file. */
+    private void closeOutput() {
+        if (_output == null) {
+            return;
+        } else if (_closeOutput) {
+            _output.close();
+        } else {
+            _output.flush();
+        }
+    }
+
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
      *  results to _output. */
     private void process() {
         Machine M = readConfig();
-        if (!_input.hasNext("\\*")) {
-            throw error("Message with no config");
+        if (_compile) {
+            MachineImage.write(M, _imageName);
+            return;
         }
-        while (_input.hasNextLine()) {
-            String storedvalue = _input.nextLine();
-            if (storedvalue.isEmpty()) {
-                _output.println();
-            } else if (storedvalue.startsWith("*")) {
-                setUp(M, storedvalue);
+        M.useComposite(_composite);
+        M.useEngine(_engine);
+        if (_mapped && isAscii(_alphabet)) {
+            processMapped(M);
+            return;
+        } else if (_mapped) {
+            _input = new MessageReader(getReader(_inputName), CHUNK_SIZE);
+            _output = getOutput(_outputName);
+        }
+        if (_jobs > 0) {
+            processBlocks(M);
+            return;
+        }
+        convertMessages(M);
+    }
+
+    /** Apply M, as set up by the setting lines in _input, to the
+     *  messages in _input, sending the results to _output. */
+    void convertMessages(Machine M) {
+        char[] chunk =
+            new char[_parallel == null ? CHUNK_SIZE : PARALLEL_CHUNK_SIZE];
+        while (_input.nextLine()) {
+            int first = _input.peek();
+            if (first == '*') {
+                startSettings(M, _input.restOfLine());
+            } else if (!_configured) {
+                if (!isBlank(chunk)) {
+                    throw error("Message with no config");
+                }
+                _pendingBlanks += 1;
+            } else if (first == -1) {
+                Metrics.count(Metrics.MESSAGES, 1);
+                _output.endLine();
             } else {
-                int i = 0;
-                while (i < M.rotorConfig().size()) {
-                    i++;
+                Metrics.count(Metrics.MESSAGES, 1);
+                int n;
+                while ((n = _input.read(chunk, 0, chunk.length)) >= 0) {
+                    PhaseEvent start = Metrics.start();
+                    if (_parallel != null) {
+                        n = _parallel.convert(M, chunk, 0, n);
+                    } else {
+                        n = M.convert(chunk, 0, n, chunk);
+                    }
+                    Metrics.finish(Metrics.CONVERT, start, n);
+                    Metrics.count(Metrics.CHARACTERS, n);
+                    printMessageChunk(chunk, n);
                 }
-                String output = M.convert(storedvalue);
-                printMessageLine(output);
+                endMessageLine();
             }
+        }
+        if (!_configured) {
+            throw error("Message with no config");
+        }
+    }
+
+    /** Set M according to the setting line SETTINGS.  For the first
+     *  setting line, first check that it starts the input properly and
+     *  print the blank lines that preceded it. */
+    private void startSettings(Machine M, String settings) {
+        checkFirstSettings(settings);
+        timedSetUp(M, settings);
+    }
 
+    /** If SETTINGS is the first setting line, check that it starts the
+     *  input properly and print the blank lines that preceded it. */
+    private void checkFirstSettings(String settings) {
+        if (!_configured) {
+            if (settings.length() > 1
+                && !Character.isWhitespace(settings.charAt(1))) {
+                throw error("Message with no config");
+            }
+            _configured = true;
+            for (; _pendingBlanks > 0; _pendingBlanks -= 1) {
+                if (_mappedOutput != null) {
+                    _mappedOutput.put(NEWLINE);
+                } else {
+                    _output.endLine();
+                }
+            }
         }
     }
 
-    /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
-    private Machine readConfig() {
+    /** Process _input as for process(), but convert the messages that
+     *  follow each setting line as a separate job on a pool of _jobs
+     *  threads, each using its own copy of M, and print the results in
+     *  input order.  Each message line is read whole. */
+    private void processBlocks(Machine M) {
+        ExecutorService pool = Executors.newFixedThreadPool(_jobs);
+        ArrayDeque<Future<String>> pending = new ArrayDeque<>();
+        char[] chunk = new char[CHUNK_SIZE];
+        try {
+            String settings = null;
+            ArrayList<String> lines = new ArrayList<>();
+            while (_input.nextLine()) {
+                if (_input.peek() == '*') {
+                    String next = _input.restOfLine();
+                    if (settings == null) {
+                        checkFirstSettings(next);
+                    } else {
+                        submitBlock(pool, pending, M, settings, lines);
+                        lines = new ArrayList<>();
+                    }
+                    settings = next;
+                } else if (settings != null) {
+                    lines.add(_input.restOfLine());
+                } else if (isBlank(chunk)) {
+                    _pendingBlanks += 1;
+                } else {
+                    throw error("Message with no config");
+                }
+            }
+            if (settings == null) {
+                throw error("Message with no config");
+            }
+            submitBlock(pool, pending, M, settings, lines);
+            while (!pending.isEmpty()) {
+                printBlock(pending.removeFirst());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Queue the conversion of message lines LINES following setting
+     *  line SETTINGS on POOL, using a copy of M, adding its result to
+     *  PENDING.  First print finished blocks, waiting if PENDING is
+     *  full. */
+    private void submitBlock(ExecutorService pool,
+                             ArrayDeque<Future<String>> pending,
+                             Machine M, String settings,
+                             ArrayList<String> lines) {
+        while (pending.size() >= _jobs * BLOCKS_PER_JOB
+               || !pending.isEmpty() && pending.peekFirst().isDone()) {
+            printBlock(pending.removeFirst());
+        }
+        pending.addLast(pool.submit(() -> convertBlock(M, settings, lines)));
+    }
+
+    /** Print the result of BLOCK, waiting for it if necessary, or throw
+     *  the EnigmaException it encountered. */
+    private void printBlock(Future<String> block) {
         try {
-            String starts = _config.next();
-            if (starts.length() < 3) {
-                throw error("First line must "
-                        + "configure alphabet");
+            String text = block.get();
+            PhaseEvent start = Metrics.start();
+            _output.write(text);
+            Metrics.finish(Metrics.PRINT, start, text.length());
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
             }
-            if (starts.charAt(1) == '-') {
-                String[] ends = starts.split("-", 2);
-                String alph = "";
-                for (String end : ends) {
-                    alph = alph + end;
+            throw new IllegalStateException(excp.getCause());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        }
+    }
+
+    /** Return the output for message lines LINES following setting line
+     *  SETTINGS, converted by a copy of M. */
+    private String convertBlock(Machine M, String settings,
+                                ArrayList<String> lines) {
+        Machine mach = M.copy();
+        timedSetUp(mach, settings);
+        StringBuilder result = new StringBuilder();
+        for (String line : lines) {
+            PhaseEvent start = Metrics.start();
+            String msg = mach.convert(line);
+            Metrics.finish(Metrics.CONVERT, start, msg.length());
+            Metrics.count(Metrics.MESSAGES, 1);
+            Metrics.count(Metrics.CHARACTERS, msg.length());
+            for (int i = 0; i < msg.length(); i += 1) {
+                if (i > 0 && i % 5 == 0) {
+                    result.append(' ');
                 }
-                char[] startend = alph.toCharArray();
-                _alphabet = new CharacterRange(startend[0], startend[1]);
-            } else {
-                _alphabet = new IntegerRange(starts);
+                result.append(msg.charAt(i));
+            }
+            result.append(System.lineSeparator());
+        }
+        return result.toString();
+    }
+
+    /** Return true iff every character of ALPHA is ASCII. */
+    private static boolean isAscii(Alphabet alpha) {
+        for (int i = 0; i < alpha.size(); i += 1) {
+            if (alpha.toChar(i) >= ASCII_LIMIT) {
+                return false;
             }
-            int numRotors = _config.nextInt();
-            int pawls = _config.nextInt();
-            ArrayList<Rotor> allRotors = new ArrayList<>();
-            _config.nextLine();
-            while (_config.hasNextLine()) {
-                if (_config.hasNext(".*\\)")) {
-                    String cycle = allRotors.get
-                            (allRotors.size() - 1).permutation().cycles();
-                    Scanner storedvalue = new Scanner(_config.nextLine());
-                    while (storedvalue.hasNext()) {
-                        if (storedvalue.hasNext(".*\\)")) {
-                            cycle = cycle + storedvalue.next();
-                        } else {
-                            throw error("Bad perm format");
+        }
+        return true;
+    }
+
+    /** Process the input file named _inputName as for process(), writing
+     *  to the file named _outputName.  Both files are accessed through
+     *  memory-mapped windows, one byte per character, without decoding,
+     *  so this is used only when my alphabet is ASCII. */
+    private void processMapped(Machine M) {
+        MappedInput in = new MappedInput(
+            openChannel(_inputName, StandardOpenOption.READ), MAP_WINDOW);
+        int outWindow = (int) Math.min(MAP_WINDOW, MIN_MAP_WINDOW
+                                       + MAX_OUTPUT_PER_BYTE * in.size());
+        MappedOutput out = new MappedOutput(
+            openChannel(_outputName, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING), outWindow);
+        _mappedOutput = out;
+        try {
+            StringBuilder settings = new StringBuilder();
+            int state = LINE_START;
+            boolean skipLF = false;
+            for (ByteBuffer window; (window = in.nextWindow()) != null;) {
+                while (window.hasRemaining()) {
+                    int b = window.get() & BYTE_MASK;
+                    if (skipLF) {
+                        skipLF = false;
+                        if (b == '\n') {
+                            continue;
                         }
                     }
-                    allRotors.get(allRotors.size() - 1).
-                            permutation().setCycles(cycle);
-                } else {
-                    allRotors.add(readRotor());
+                    if (b == '\n' || b == '\r') {
+                        skipLF = b == '\r';
+                        endMappedLine(M, state, settings);
+                        state = LINE_START;
+                    } else if (state == SETTING_LINE
+                               || state == LINE_START && b == '*') {
+                        state = SETTING_LINE;
+                        settings.append((char) b);
+                    } else if (!_configured) {
+                        if (!Character.isWhitespace((char) b)) {
+                            throw error("Message with no config");
+                        }
+                        state = MESSAGE_LINE;
+                    } else {
+                        state = MESSAGE_LINE;
+                        window.position(window.position() - 1);
+                        putMappedRun(M, window);
+                    }
                 }
             }
-            return new Machine(_alphabet, numRotors, pawls, allRotors);
-        } catch (NoSuchElementException excp) {
-            throw error("configuration file truncated");
+            if (state != LINE_START) {
+                endMappedLine(M, state, settings);
+            }
+            if (!_configured) {
+                throw error("Message with no config");
+            }
+        } finally {
+            out.close();
+            in.close();
         }
     }
 
-    /** Return a rotor, reading its description from _config. */
-    private Rotor readRotor() {
+    /** Handle the end of an input line in processMapped for M, where
+     *  STATE describes the line and SETTINGS holds it if it is a setting
+     *  line. */
+    private void endMappedLine(Machine M, int state, StringBuilder settings) {
+        if (state == SETTING_LINE) {
+            startSettings(M, settings.toString());
+            settings.setLength(0);
+        } else if (!_configured) {
+            _pendingBlanks += 1;
+        } else {
+            Metrics.count(Metrics.MESSAGES, 1);
+            Metrics.count(Metrics.CHARACTERS, _column);
+            _mappedOutput.put(NEWLINE);
+            _column = 0;
+        }
+    }
+
+    /** Convert the bytes of WINDOW with M from its position up to the
+     *  next line terminator or its limit, and write them to _mappedOutput
+     *  in groups of five.  Bytes go through Machine.convertAscii, so no
+     *  characters are decoded or encoded. */
+    private void putMappedRun(Machine M, ByteBuffer window) {
+        if (_runIn == null) {
+            _runIn = new byte[CHUNK_SIZE];
+            _runOut = new byte[CHUNK_SIZE + CHUNK_SIZE / 5 + 1];
+        }
+        int first = window.position();
+        int end = first;
+        int limit = Math.min(window.limit(), first + CHUNK_SIZE);
+        while (end < limit && window.get(end) != '\n'
+               && window.get(end) != '\r') {
+            end += 1;
+        }
+        window.get(_runIn, 0, end - first);
+        PhaseEvent start = Metrics.start();
+        int n = M.convertAscii(_runIn, 0, end - first, _runIn, 0);
+        Metrics.finish(Metrics.CONVERT, start, n);
+        start = Metrics.start();
+        int k = 0;
+        for (int i = 0; i < n; i += 1) {
+            if (_column > 0 && _column % 5 == 0) {
+                _runOut[k] = ' ';
+                k += 1;
+            }
+            _runOut[k] = _runIn[i];
+            k += 1;
+            _column += 1;
+        }
+        _mappedOutput.put(_runOut, 0, k);
+        Metrics.finish(Metrics.PRINT, start, n);
+    }
+
+    /** Return a channel on the file named NAME, opened with OPTIONS. */
+    private FileChannel openChannel(String name,
+                                    StandardOpenOption... options) {
         try {
-            Scanner storedvalue = new Scanner(_config.nextLine());
-            String name = storedvalue.next();
-            String type = storedvalue.next();
-            char[] types = type.toCharArray();
-            String cycle = "";
-            while (storedvalue.hasNext()) {
-                if (storedvalue.hasNext(".*\\)")) {
-                    cycle = cycle + storedvalue.next();
-                } else {
-                    throw error("Bad perm format");
+            return FileChannel.open(Paths.get(name), options);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return true iff the rest of the current input line is whitespace,
+     *  consuming it and using BUF as scratch space. */
+    private boolean isBlank(char[] buf) {
+        int n;
+        while ((n = _input.read(buf, 0, buf.length)) >= 0) {
+            for (int i = 0; i < n; i += 1) {
+                if (!Character.isWhitespace(buf[i])) {
+                    return false;
                 }
             }
-            if (types[0] == 'M') {
-                return new MovingRotor(name,
-                     new Permutation(cycle, _alphabet), type.substring(1));
-            } else if (types[0] == 'N') {
-                return new FixedRotor(name, new Permutation(cycle, _alphabet));
-            } else {
-                return new Reflector(name, new Permutation(cycle, _alphabet));
-            }
-        } catch (NoSuchElementException excp) {
-            throw error("bad rotor description");
         }
+        return true;
     }
 
+    /** Return an Enigma machine configured from the contents of configuration
+     *  file _config, or loaded from the machine image _imageName. */
+    private Machine readConfig() {
+        PhaseEvent start = Metrics.start();
+        Machine result;
+        if (_config == null) {
+            result = MachineImage.load(_imageName);
+            _alphabet = result.alphabet();
+        } else {
+            ConfigParser parser = new ConfigParser(_config);
+            result = parser.parse();
+            _alphabet = parser.alphabet();
+        }
+        Metrics.finish(Metrics.READ_CONFIG, start, 1);
+        return result;
+    }
 
+    /** Set up M as for setUp(M, SETTINGS), recording it in Metrics. */
+    private void timedSetUp(Machine M, String settings) {
+        PhaseEvent start = Metrics.start();
+        setUp(M, settings);
+        Metrics.finish(Metrics.SET_UP, start, 1);
+        Metrics.count(Metrics.SETTING_LINES, 1);
+    }
 
     /** Set M according to the specification given on SETTINGS,
-     *  which must have the format specified in the assignment. */
+     *  which must have the format specified in the assignment.  Machines
+     *  set up for a given choice of rotors and plugboard are cached in
+     *  _setups, so that a repeated choice only resets the rotors. */
     private void setUp(Machine M, String settings) {
-        Scanner setting = new Scanner(settings);
-        String value = setting.next();
-        String[] addingrotors = new String[M.numRotors()];
+        ArrayList<String> setting = tokens(settings);
+        int numRotors = M.numRotors();
+        if (setting.isEmpty() || !setting.get(0).equals("*")) {
+            checkMovingRotors(M);
+            return;
+        }
+        if (setting.size() < numRotors + 2) {
+            throw error("Bad setting line");
+        }
+        StringBuilder key = new StringBuilder();
+        for (int i = 1; i <= numRotors; i += 1) {
+            key.append(setting.get(i)).append(' ');
+        }
         String plugboardcycles = "";
-        ArrayList<String> addedrotors = new ArrayList<String>();
-        int i = 0;
-        if (value.equals("*")) {
-            while (i < M.numRotors()) {
-                addingrotors[i] = setting.next();
-                i++;
+        for (int i = numRotors + 2; i < setting.size(); i += 1) {
+            String token = setting.get(i);
+            if (token.length() < 2 || !token.endsWith(")")) {
+                break;
             }
-            for (String rotor : addingrotors) {
-                if (addedrotors.contains(rotor)) {
+            plugboardcycles += token;
+        }
+        key.append(plugboardcycles);
+        String rotorSetting = setting.get(numRotors + 1);
+        Machine cached = _setups.get(key.toString());
+        Metrics.count(cached != null ? Metrics.SETUP_HITS
+                      : Metrics.SETUP_MISSES, 1);
+        if (cached != null) {
+            M.configureFrom(cached);
+        } else {
+            String[] addingrotors = new String[numRotors];
+            ArrayList<String> addedrotors = new ArrayList<String>();
+            for (int i = 0; i < numRotors; i += 1) {
+                addingrotors[i] = setting.get(i + 1);
+                if (addedrotors.contains(addingrotors[i])) {
                     throw error("Duplicate rotor name");
-                } else {
-                    addedrotors.add(rotor);
                 }
+                addedrotors.add(addingrotors[i]);
             }
             M.insertRotors(addingrotors);
-            int limit = (M.numRotors() - 1);
-            if (setting.hasNext("A-Z{" + limit + "}")) {
-                throw error("Too many rotors");
-            }
-            M.setRotors(setting.next());
-            while (setting.hasNext(".+\\)")) {
-                plugboardcycles += setting.next();
-            }
+        }
+        int limit = (M.numRotors() - 1);
+        if (rotorSetting.matches("A-Z{" + limit + "}")) {
+            throw error("Too many rotors");
+        }
+        M.setRotors(rotorSetting);
+        if (cached == null) {
             M.setPlugboard(new Permutation(plugboardcycles, _alphabet));
         }
+        checkMovingRotors(M);
+        if (cached == null) {
+            _setups.put(key.toString(), M);
+        }
+    }
+
+    /** Check that M has no more moving rotors than pawls. */
+    private void checkMovingRotors(Machine M) {
         int j = 0;
         for (Rotor rotor : M.rotorConfig()) {
             if (rotor.rotates()) {
@@ -220,37 +680,167 @@ public final class Main {
         if (j > M.numPawls()) {
             throw error("Too many moving rotors");
         }
+    }
 
+    /** Return the whitespace-separated tokens of LINE. */
+    private static ArrayList<String> tokens(String line) {
+        ArrayList<String> result = new ArrayList<>();
+        int n = line.length();
+        for (int i = 0; i < n;) {
+            while (i < n && Character.isWhitespace(line.charAt(i))) {
+                i += 1;
+            }
+            int start = i;
+            while (i < n && !Character.isWhitespace(line.charAt(i))) {
+                i += 1;
+            }
+            if (i > start) {
+                result.add(line.substring(start, i));
+            }
+        }
+        return result;
     }
 
     /** Print MSG in groups of five (except that the last group may
      *  have fewer letters). */
     private void printMessageLine(String msg) {
-        int i = 0;
-        char[] output = msg.toCharArray();
-        while (i < msg.length()) {
-            _output.print(output[i]);
-            if (i % 5 == 4 && i != msg.length() - 1) {
-                _output.print(" ");
-            }
-            i++;
-        }
-        _output.println();
+        printMessageChunk(msg.toCharArray(), msg.length());
+        endMessageLine();
+    }
+
+    /** Print the first LEN characters of MSG as the continuation of the
+     *  current message line, in groups of five counting from the start
+     *  of the line. */
+    private void printMessageChunk(char[] msg, int len) {
+        PhaseEvent start = Metrics.start();
+        _output.putGroups(msg, 0, len);
+        Metrics.finish(Metrics.PRINT, start, len);
+    }
 
+    /** End the current message line. */
+    private void endMessageLine() {
+        _output.endLine();
     }
 
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
+    /** Values of _flush. */
+    static final int FLUSH_DEFAULT = 0, FLUSH_LINE = 1, FLUSH_BLOCK = 2;
+
+    /** Size of the output buffer. */
+    static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+
+    /** Number of characters in the pieces of input lines handled at
+     *  once. */
+    static final int CHUNK_SIZE = 8192;
+
+    /** Number of characters of an input line handled at once with
+     *  --parallel. */
+    static final int PARALLEL_CHUNK_SIZE = 1 << 22;
+
+    /** Length of the shortest stretch of message converted in parallel
+     *  with --parallel. */
+    static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    /** Number of blocks per thread that --jobs converts ahead of the
+     *  output. */
+    static final int BLOCKS_PER_JOB = 4;
+
+    /** Number of bytes of a file mapped at once by --mmap. */
+    static final int MAP_WINDOW = 1 << 26;
+
+    /** Most bytes of output written by --mmap for each byte of input (a
+     *  one-byte line terminator may become a two-byte line separator),
+     *  and the smallest output window, used to map no more output than
+     *  needed for small inputs. */
+    static final int MAX_OUTPUT_PER_BYTE = 2, MIN_MAP_WINDOW = 1 << 12;
+
+    /** States of processMapped: at the start of a line, within a setting
+     *  line, and within a message line. */
+    private static final int LINE_START = 0, SETTING_LINE = 1,
+        MESSAGE_LINE = 2;
+
+    /** Characters below this are ASCII. */
+    private static final int ASCII_LIMIT = 0x80;
+
+    /** Mask selecting the low byte of an int. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Line separator, as bytes. */
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes();
+
     /** Source of input messages. */
-    private Scanner _input;
+    private MessageReader _input;
+
+    /** Text of the machine configuration, or null if the machine comes
+     *  from an image. */
+    private char[] _config;
+
+    /** Name of the machine image to load or (with --compile) write. */
+    private String _imageName;
+
+    /** True if the configuration is to be compiled into an image
+     *  (--compile) rather than used. */
+    private boolean _compile;
+
+    /** Destination of encoded/decoded messages. */
+    private GroupedWriter _output;
 
-    /** Source of machine configuration. */
-    private Scanner _config;
+    /** True iff _output is a file, to be closed at the end. */
+    private boolean _closeOutput;
 
-    /** File for encoded/decoded messages. */
-    private PrintStream _output;
+    /** Flushing policy given by --flush: FLUSH_DEFAULT, FLUSH_LINE or
+     *  FLUSH_BLOCK. */
+    private int _flush;
 
     /** Storing names of next rotors.*/
     private String _storedname;
+
+    /** Number of characters printed so far on the current message
+     *  line. */
+    private int _column;
+
+
+    /** Number of rotor and plugboard choices whose machines are cached
+     *  by setUp. */
+    static final int SETUP_CACHE_SIZE = 1024;
+
+    /** Machines configured by setUp, by choice of rotors and
+     *  plugboard. */
+    private final MachineCache _setups = new MachineCache(SETUP_CACHE_SIZE);
+
+    /** Cache of composite tables if --composite was given, else null. */
+    private CompositeCache _composite;
+
+    /** Engine given by --engine, else null. */
+    private BatchEngine _engine;
+
+    /** Number of threads given by --jobs, or 0 if none. */
+    private int _jobs;
+
+    /** Converter for long lines if --parallel was given, else null. */
+    private ParallelConverter _parallel;
+
+    /** True iff the --stats option was given. */
+    private boolean _stats;
+
+    /** True iff the --mmap option was given. */
+    private boolean _mapped;
+
+    /** Names of the input and output files when _mapped. */
+    private String _inputName, _outputName;
+
+    /** Output file when processing with processMapped. */
+    private MappedOutput _mappedOutput;
+
+    /** Scratch space for putMappedRun's input and grouped output, or
+     *  null until first needed. */
+    private byte[] _runIn, _runOut;
+
+    /** True once the first setting line has been read. */
+    private boolean _configured;
+
+    /** Number of blank lines read before the first setting line. */
+    private int _pendingBlanks;
 }
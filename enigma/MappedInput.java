@@ -0,0 +1,68 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static enigma.EnigmaException.*;
+
+/** A file read as a sequence of memory-mapped windows, so that files of
+ *  any size (including those over 2GB) can be read without copying.
+ *  @author Roland Li
+ */
+class MappedInput {
+
+    /** Input from CHANNEL, mapped WINDOW bytes at a time. */
+    MappedInput(FileChannel channel, int window) {
+        _channel = channel;
+        _window = window;
+        try {
+            _size = channel.size();
+        } catch (IOException excp) {
+            throw error("could not read input");
+        }
+    }
+
+    /** Return the length of the file. */
+    long size() {
+        return _size;
+    }
+
+    /** Return the next window of the file, or null if the whole file has
+     *  been returned. */
+    MappedByteBuffer nextWindow() {
+        if (_position >= _size) {
+            return null;
+        }
+        long len = Math.min(_window, _size - _position);
+        try {
+            MappedByteBuffer result =
+                _channel.map(FileChannel.MapMode.READ_ONLY, _position, len);
+            _position += len;
+            return result;
+        } catch (IOException excp) {
+            throw error("could not read input");
+        }
+    }
+
+    /** Close my channel. */
+    void close() {
+        try {
+            _channel.close();
+        } catch (IOException excp) {
+            throw error("could not read input");
+        }
+    }
+
+    /** The mapped file. */
+    private final FileChannel _channel;
+
+    /** Maximum number of bytes mapped at once. */
+    private final int _window;
+
+    /** Length of the file. */
+    private final long _size;
+
+    /** File offset of the next window. */
+    private long _position;
+}
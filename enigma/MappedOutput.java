@@ -0,0 +1,111 @@
+package enigma;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static enigma.EnigmaException.*;
+
+/** A file written through a sliding memory-mapped window.  The file is
+ *  extended a window at a time as bytes are put, and truncated to the
+ *  number of bytes actually written when closed.  Each window is
+ *  unmapped as soon as it is finished with, since some systems (such as
+ *  Windows) refuse to truncate a file while part of it is mapped.
+ *  @author Roland Li
+ */
+class MappedOutput {
+
+    /** Output to CHANNEL, mapped WINDOW bytes at a time. */
+    MappedOutput(FileChannel channel, int window) {
+        _channel = channel;
+        _window = window;
+    }
+
+    /** Append B to the file. */
+    void put(byte b) {
+        if (_buf == null || !_buf.hasRemaining()) {
+            remap();
+        }
+        _buf.put(b);
+    }
+
+    /** Append the bytes of BYTES to the file. */
+    void put(byte[] bytes) {
+        put(bytes, 0, bytes.length);
+    }
+
+    /** Append the LEN bytes of BYTES starting at OFF to the file. */
+    void put(byte[] bytes, int off, int len) {
+        while (len > 0) {
+            if (_buf == null || !_buf.hasRemaining()) {
+                remap();
+            }
+            int n = Math.min(len, _buf.remaining());
+            _buf.put(bytes, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /** Trim the file to the bytes written and close it. */
+    void close() {
+        try {
+            long written = _start + (_buf == null ? 0 : _buf.position());
+            unmap(_buf);
+            _buf = null;
+            _channel.truncate(written);
+            _channel.close();
+        } catch (IOException excp) {
+            throw error("could not write output");
+        }
+    }
+
+    /** Map the window following the current one. */
+    private void remap() {
+        try {
+            if (_buf != null) {
+                _start += _buf.position();
+                unmap(_buf);
+                _buf = null;
+            }
+            _buf = _channel.map(FileChannel.MapMode.READ_WRITE,
+                                _start, _window);
+        } catch (IOException excp) {
+            throw error("could not write output");
+        }
+    }
+
+    /** Release the mapping of BUF, if not null, now rather than when it
+     *  is garbage collected.  The JDK offers no public way to do this, so
+     *  the cleaner is invoked through sun.misc.Unsafe if available;
+     *  otherwise the mapping is left to the collector.  BUF must not be
+     *  used afterward. */
+    private static void unmap(MappedByteBuffer buf) {
+        if (buf == null) {
+            return;
+        }
+        try {
+            Class<?> unsafe = Class.forName("sun.misc.Unsafe");
+            Field instance = unsafe.getDeclaredField("theUnsafe");
+            instance.setAccessible(true);
+            unsafe.getMethod("invokeCleaner", ByteBuffer.class)
+                .invoke(instance.get(null), buf);
+        } catch (ReflectiveOperationException | RuntimeException excp) {
+            /* Unmapped when collected. */
+        }
+    }
+
+    /** The mapped file. */
+    private final FileChannel _channel;
+
+    /** Number of bytes mapped at once. */
+    private final int _window;
+
+    /** The current window, or null before the first put. */
+    private MappedByteBuffer _buf;
+
+    /** File offset of the start of _buf. */
+    private long _start;
+}
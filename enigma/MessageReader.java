@@ -0,0 +1,172 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import static enigma.EnigmaException.*;
+
+/** A line-oriented reader of message input that never holds more than a
+ *  fixed-size chunk of a line in memory.  A client calls nextLine() to
+ *  move to each line in turn and then either restOfLine() (for short
+ *  lines, such as settings) or read() (for message text of any length).
+ *  Lines end at "\n", "\r\n", or "\r", as for Scanner.nextLine.
+ *  @author Roland Li
+ */
+class MessageReader {
+
+    /** A reader of lines from SOURCE, buffering CHUNKSIZE characters at
+     *  a time. */
+    MessageReader(Reader source, int chunkSize) {
+        _source = source;
+        _buf = new char[chunkSize];
+    }
+
+    /** Skip whatever remains of the current line and move to the start
+     *  of the next.  Returns false if there are no more lines. */
+    boolean nextLine() {
+        while (_inLine) {
+            if (!fill()) {
+                _inLine = false;
+                return false;
+            }
+            skipToEnd();
+        }
+        if (_skipLF && fill()) {
+            if (_buf[_pos] == '\n') {
+                _pos += 1;
+            }
+        }
+        _skipLF = false;
+        if (!fill()) {
+            return false;
+        }
+        _inLine = true;
+        return true;
+    }
+
+    /** Return the next character of the current line without consuming
+     *  it, or -1 if the line has no more characters. */
+    int peek() {
+        if (!_inLine || !fill()) {
+            return -1;
+        }
+        char c = _buf[_pos];
+        return c == '\n' || c == '\r' ? -1 : c;
+    }
+
+    /** Read up to LEN characters of the current line into BUF starting at
+     *  OFF.  Returns the number of characters read, or -1 if the current
+     *  line has no more characters. */
+    int read(char[] buf, int off, int len) {
+        int k = 0;
+        while (k < len && _inLine && fill()) {
+            int end = Math.min(_limit, _pos + len - k);
+            int start = _pos;
+            while (_pos < end && _buf[_pos] != '\n' && _buf[_pos] != '\r') {
+                _pos += 1;
+            }
+            System.arraycopy(_buf, start, buf, off + k, _pos - start);
+            k += _pos - start;
+            if (_pos < end) {
+                endLine();
+            }
+        }
+        if (k == 0 && (!_inLine || !fill())) {
+            _inLine = false;
+            return -1;
+        }
+        return k;
+    }
+
+    /** Return the unread part of the current line, consuming it. */
+    String restOfLine() {
+        StringBuilder result = new StringBuilder();
+        char[] part = new char[Math.min(_buf.length, LINE_CHUNK)];
+        int n;
+        while ((n = read(part, 0, part.length)) >= 0) {
+            result.append(part, 0, n);
+        }
+        return result.toString();
+    }
+
+    /** Skip the unread characters of the current line in the buffer,
+     *  consuming its terminator if it is buffered. */
+    private void skipToEnd() {
+        while (_pos < _limit) {
+            char c = _buf[_pos];
+            if (c == '\n' || c == '\r') {
+                endLine();
+                return;
+            }
+            _pos += 1;
+        }
+    }
+
+    /** Consume the line terminator at _pos and leave the current line. */
+    private void endLine() {
+        _skipLF = _buf[_pos] == '\r';
+        _pos += 1;
+        _inLine = false;
+        if (_skipLF && _pos < _limit) {
+            if (_buf[_pos] == '\n') {
+                _pos += 1;
+            }
+            _skipLF = false;
+        }
+    }
+
+    /** Make sure at least one unread character is buffered, reading from
+     *  _source if needed.  Returns false (and clears the current line) at
+     *  end of input. */
+    private boolean fill() {
+        if (_pos < _limit) {
+            return true;
+        }
+        if (_eof) {
+            _inLine = false;
+            return false;
+        }
+        try {
+            int n;
+            do {
+                n = _source.read(_buf, 0, _buf.length);
+            } while (n == 0);
+            if (n < 0) {
+                _eof = true;
+                _inLine = false;
+                return false;
+            }
+            _pos = 0;
+            _limit = n;
+            return true;
+        } catch (IOException excp) {
+            throw error("could not read input");
+        }
+    }
+
+    /** Size of the pieces in which restOfLine gathers a line. */
+    private static final int LINE_CHUNK = 256;
+
+    /** Source of characters. */
+    private final Reader _source;
+
+    /** Characters read from _source but not yet consumed. */
+    private final char[] _buf;
+
+    /** Index of the next unconsumed character in _buf. */
+    private int _pos;
+
+    /** Number of valid characters in _buf. */
+    private int _limit;
+
+    /** True while positioned within a line whose terminator has not
+     *  been consumed. */
+    private boolean _inLine;
+
+    /** True if the last terminator was "\r", so that a following "\n"
+     *  belongs to it. */
+    private boolean _skipLF;
+
+    /** True once _source is exhausted. */
+    private boolean _eof;
+}
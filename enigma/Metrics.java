@@ -0,0 +1,293 @@
+package enigma;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import jdk.jfr.FlightRecorder;
+
+/** Counters and latency histograms for the phases of a run: reading the
+ *  configuration, applying setting lines, converting message text, and
+ *  printing it.  Disabled unless enable() is called (as by Main's
+ *  --stats option or the system property enigma.metrics=true); while
+ *  disabled, and with no Flight Recorder running, each recording costs
+ *  a test or two and nothing is allocated.  Recording is done per
+ *  setting line and per chunk of message text, never per character.
+ *  When enabled, metrics are also published through JMX (see
+ *  MetricsMXBean).  Independently, each timed phase is emitted as a
+ *  Flight Recorder PhaseEvent whenever a recording enables that event.
+ *  Counters and histograms are LongAdders, so threads converting
+ *  concurrently do not contend.  Histograms have one bucket per power
+ *  of two nanoseconds.
+ *  @author Roland Li
+ */
+class Metrics implements MetricsMXBean {
+
+    /** Start recording metrics, and register them with the platform
+     *  MBean server if that has not been done. */
+    static synchronized void enable() {
+        _enabled = true;
+        if (!_registered) {
+            _registered = true;
+            try {
+                ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+            } catch (JMException | SecurityException excp) {
+                /* Metrics are still available through --stats. */
+            }
+        }
+    }
+
+    /** Enable metrics if the system property enigma.metrics is "true". */
+    static void enableFromProperty() {
+        if (Boolean.getBoolean(PROPERTY)) {
+            enable();
+        }
+    }
+
+    /** Return true iff metrics are being recorded. */
+    static boolean enabled() {
+        return _enabled;
+    }
+
+    /** Add N to COUNTER (one of CHARACTERS ... COMPOSITE_MISSES), if
+     *  enabled. */
+    static void count(int counter, long n) {
+        if (_enabled) {
+            COUNTERS[counter].add(n);
+        }
+    }
+
+    /** Return the event for a phase starting now, to pass to finish, or
+     *  null if neither metrics nor a Flight Recorder recording of
+     *  PhaseEvents is enabled. */
+    static PhaseEvent start() {
+        if (!_enabled && !FlightRecorder.isInitialized()) {
+            return null;
+        }
+        PhaseEvent event = new PhaseEvent();
+        if (!_enabled && !event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        event.startNanos = System.nanoTime();
+        return event;
+    }
+
+    /** Record the end of an occurrence of PHASE (one of READ_CONFIG ...
+     *  PRINT) whose event, from start(), is EVENT, handling COUNT
+     *  characters (1 for phases not measured in characters): in the
+     *  histograms if metrics are enabled, and as a Flight Recorder event
+     *  if a recording wants it. */
+    static void finish(int phase, PhaseEvent event, long count) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (_enabled) {
+            long nanos = Math.max(System.nanoTime() - event.startNanos, 0);
+            HISTOGRAMS[phase][bucket(nanos)].increment();
+            TOTALS[phase].add(nanos);
+        }
+        if (event.shouldCommit()) {
+            event.phase = PHASES[phase];
+            event.count = count;
+            event.commit();
+        }
+    }
+
+    /** Return the histogram bucket of a latency of NANOS. */
+    static int bucket(long nanos) {
+        return Long.SIZE - Long.numberOfLeadingZeros(nanos);
+    }
+
+    /** Return the summary printed by --stats. */
+    static String summary() {
+        StringBuilder result = new StringBuilder();
+        result.append(String.format("%-22s %14s%n", "counter", "total"));
+        for (int k = 0; k < COUNTERS.length; k += 1) {
+            result.append(String.format("%-22s %14d%n", COUNTER_NAMES[k],
+                                        COUNTERS[k].sum()));
+        }
+        result.append(String.format("%-22s %10s %12s %10s %10s %10s%n",
+                                    "phase", "count", "total ms",
+                                    "mean us", "p50 us", "p99 us"));
+        for (int p = 0; p < PHASES.length; p += 1) {
+            long[] histogram = histogram(p);
+            long n = 0;
+            for (long h : histogram) {
+                n += h;
+            }
+            long total = TOTALS[p].sum();
+            result.append(String.format(
+                "%-22s %10d %12.3f %10.1f %10.1f %10.1f%n", PHASES[p], n,
+                total / 1e6, n == 0 ? 0 : total / 1e3 / n,
+                percentile(histogram, n, 0.5) / 1e3,
+                percentile(histogram, n, 0.99) / 1e3));
+        }
+        return result.toString();
+    }
+
+    /** Return the upper bound in nanoseconds of the bucket of HISTOGRAM,
+     *  which counts N occurrences, holding the FRACTION percentile. */
+    private static long percentile(long[] histogram, long n,
+                                   double fraction) {
+        long seen = 0;
+        for (int k = 0; k < histogram.length; k += 1) {
+            seen += histogram[k];
+            if (seen > 0 && seen >= fraction * n) {
+                return (1L << k) - 1;
+            }
+        }
+        return 0;
+    }
+
+    /** Return a snapshot of the histogram of PHASE. */
+    private static long[] histogram(int phase) {
+        long[] result = new long[BUCKETS];
+        for (int k = 0; k < BUCKETS; k += 1) {
+            result[k] = HISTOGRAMS[phase][k].sum();
+        }
+        return result;
+    }
+
+    /** Reset all counters and histograms to zero. */
+    static void resetAll() {
+        for (LongAdder counter : COUNTERS) {
+            counter.reset();
+        }
+        for (int p = 0; p < PHASES.length; p += 1) {
+            TOTALS[p].reset();
+            for (LongAdder bucket : HISTOGRAMS[p]) {
+                bucket.reset();
+            }
+        }
+    }
+
+    /** Return the total of counter K. */
+    private static long total(int k) {
+        return COUNTERS[k].sum();
+    }
+
+    @Override
+    public long getCharacters() {
+        return total(CHARACTERS);
+    }
+
+    @Override
+    public long getMessages() {
+        return total(MESSAGES);
+    }
+
+    @Override
+    public long getSettingLines() {
+        return total(SETTING_LINES);
+    }
+
+    @Override
+    public long getSetupCacheHits() {
+        return total(SETUP_HITS);
+    }
+
+    @Override
+    public long getSetupCacheMisses() {
+        return total(SETUP_MISSES);
+    }
+
+    @Override
+    public long getCompositeCacheHits() {
+        return total(COMPOSITE_HITS);
+    }
+
+    @Override
+    public long getCompositeCacheMisses() {
+        return total(COMPOSITE_MISSES);
+    }
+
+    @Override
+    public String[] getPhases() {
+        return PHASES.clone();
+    }
+
+    @Override
+    public long[] histogram(String phase) {
+        for (int p = 0; p < PHASES.length; p += 1) {
+            if (PHASES[p].equals(phase)) {
+                return histogram(p);
+            }
+        }
+        throw new IllegalArgumentException("unknown phase " + phase);
+    }
+
+    @Override
+    public String getSummary() {
+        return summary();
+    }
+
+    @Override
+    public void reset() {
+        resetAll();
+    }
+
+    /** Counters. */
+    static final int CHARACTERS = 0, MESSAGES = 1, SETTING_LINES = 2,
+        SETUP_HITS = 3, SETUP_MISSES = 4, COMPOSITE_HITS = 5,
+        COMPOSITE_MISSES = 6;
+
+    /** Names of the counters, as printed by --stats. */
+    private static final String[] COUNTER_NAMES = {
+        "characters", "messages", "setting lines", "setup cache hits",
+        "setup cache misses", "composite cache hits",
+        "composite cache misses",
+    };
+
+    /** Timed phases. */
+    static final int READ_CONFIG = 0, SET_UP = 1, CONVERT = 2, PRINT = 3;
+
+    /** Names of the phases, after the methods of Main they time. */
+    private static final String[] PHASES = {
+        "readConfig", "setUp", "convert", "printMessageLine",
+    };
+
+    /** Number of buckets in a histogram. */
+    static final int BUCKETS = Long.SIZE;
+
+    /** System property enabling metrics. */
+    static final String PROPERTY = "enigma.metrics";
+
+    /** Name under which metrics are registered with JMX. */
+    static final String OBJECT_NAME = "enigma:type=Metrics";
+
+    /** Values of the counters. */
+    private static final LongAdder[] COUNTERS =
+        new LongAdder[COUNTER_NAMES.length];
+
+    /** Histogram of latencies of each phase. */
+    private static final LongAdder[][] HISTOGRAMS =
+        new LongAdder[PHASES.length][BUCKETS];
+
+    /** Total time spent in each phase, in nanoseconds. */
+    private static final LongAdder[] TOTALS = new LongAdder[PHASES.length];
+
+    static {
+        for (int k = 0; k < COUNTERS.length; k += 1) {
+            COUNTERS[k] = new LongAdder();
+        }
+        for (int p = 0; p < PHASES.length; p += 1) {
+            TOTALS[p] = new LongAdder();
+            for (int k = 0; k < BUCKETS; k += 1) {
+                HISTOGRAMS[p][k] = new LongAdder();
+            }
+        }
+    }
+
+    /** The instance registered with JMX. */
+    private static final Metrics INSTANCE = new Metrics();
+
+    /** True iff metrics are being recorded.  Set before conversion
+     *  starts. */
+    private static volatile boolean _enabled;
+
+    /** True once registration with JMX has been attempted. */
+    private static boolean _registered;
+}
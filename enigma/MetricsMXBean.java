@@ -0,0 +1,48 @@
+package enigma;
+
+/** The management interface of Metrics, registered with the platform
+ *  MBean server as "enigma:type=Metrics" when metrics are enabled, so
+ *  that a running simulator can be watched with JConsole or any other
+ *  JMX client.  Latencies are in nanoseconds.
+ *  @author Roland Li
+ */
+public interface MetricsMXBean {
+
+    /** Return the number of message characters converted. */
+    long getCharacters();
+
+    /** Return the number of message lines converted. */
+    long getMessages();
+
+    /** Return the number of setting lines applied. */
+    long getSettingLines();
+
+    /** Return the number of setting lines whose rotors and plugboard
+     *  were found in, and not found in, the cache of configured
+     *  machines. */
+    long getSetupCacheHits();
+
+    /** See getSetupCacheHits. */
+    long getSetupCacheMisses();
+
+    /** Return the number of lookups that found, and did not find, a
+     *  table in a CompositeCache. */
+    long getCompositeCacheHits();
+
+    /** See getCompositeCacheHits. */
+    long getCompositeCacheMisses();
+
+    /** Return the names of the timed phases. */
+    String[] getPhases();
+
+    /** Return the histogram of latencies of PHASE: element K is the
+     *  number of occurrences taking from 2**(K-1) up to 2**K - 1
+     *  nanoseconds (element 0 counts those taking none). */
+    long[] histogram(String phase);
+
+    /** Return the summary printed by --stats. */
+    String getSummary();
+
+    /** Reset all counters and histograms to zero. */
+    void reset();
+}
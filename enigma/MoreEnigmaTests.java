@@ -3,8 +3,29 @@
  *
  */
 package enigma;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import javax.management.JMX;
+import javax.management.ObjectName;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -123,6 +144,741 @@ public class MoreEnigmaTests {
         assertEquals("AAXLE", getSetting(ac, machineRotors));
     }
 
+    @Test
+    public void testBulkConvert() {
+        Machine mach = navalMachine(5, 3, "B", "Beta", "I", "II", "III");
+        mach.insertRotors(new String[] {"B", "BETA", "I", "II", "III"});
+        mach.setRotors("AAAA");
+        assertEquals("ILBDAAMTAZ", mach.convert("Hello world"));
+
+        char[] buf = "xxHello world".toCharArray();
+        mach.setRotors("AAAA");
+        assertEquals(10, mach.convert(buf, 2, 11, buf));
+        assertEquals("ILBDAAMTAZ", new String(buf, 2, 10));
+
+        CharBuffer in = CharBuffer.wrap("Hello world");
+        CharBuffer out = CharBuffer.allocate(4);
+        mach.setRotors("AAAA");
+        assertEquals(4, mach.convert(in, out));
+        assertEquals("ILBD", new String(out.array()));
+        out.clear();
+        assertEquals(4, mach.convert(in, out));
+        assertEquals("AAMT", new String(out.array()));
+    }
+
+    @Test
+    public void testAdvanceMatchesStepping() {
+        Alphabet ac = new CharacterRange('A', 'Z');
+        Rotor[] machineRotors = {
+            new Reflector("B", new Permutation(TestUtils.NAVALA.get("B"), ac)),
+            new FixedRotor("BETA",
+                    new Permutation(TestUtils.NAVALA.get("Beta"), ac)),
+            new MovingRotor("VI",
+                    new Permutation(TestUtils.NAVALA.get("VI"), ac), "ZM"),
+            new MovingRotor("II",
+                    new Permutation(TestUtils.NAVALA.get("II"), ac), "E"),
+            new MovingRotor("III",
+                    new Permutation(TestUtils.NAVALA.get("III"), ac), "VD")
+        };
+        checkAdvance(ac, machineRotors, 3, "AAAA", "BDDU", "QEDV", "QDEC");
+
+        Alphabet ad = new CharacterRange('A', 'D');
+        Rotor[] small = {
+            new Reflector("R1", new Permutation("(AC) (BD)", ad)),
+            new MovingRotor("R2", new Permutation("(ABCD)", ad), "C"),
+            new MovingRotor("R3", new Permutation("(ABCD)", ad), "C"),
+            new MovingRotor("R4", new Permutation("(ABCD)", ad), "BC")
+        };
+        checkAdvance(ad, small, 3, "AAA", "CCB", "BDA");
+    }
+
+    @Test
+    public void testCompositeMatchesRotors() {
+        Machine mach = navalMachine(5, 3, "B", "Beta", "I", "II", "III");
+        Alphabet ac = mach.alphabet();
+        mach.insertRotors(new String[] {"B", "BETA", "I", "II", "III"});
+        String msg = TestUtils.UPPER_STRING.repeat(40);
+        CompositeCache cache = new CompositeCache(1 << 20, false, 0);
+        for (String setting : new String[] {"AAAA", "CQDV", "CQDV"}) {
+            mach.useComposite(null);
+            mach.setRotors(setting);
+            mach.setPlugboard(new Permutation("(YF) (HZ)", ac));
+            String expected = mach.convert(msg);
+            mach.useComposite(cache);
+            mach.setRotors(setting);
+            assertEquals(setting, expected, mach.convert(msg));
+        }
+        assertEquals(1, cache.hits());
+        assertEquals(2, cache.misses());
+    }
+
+    @Test
+    public void testCompositeBuiltAtBreakEven() {
+        Machine mach = navalMachine(3, 2, "B", "I", "II");
+        mach.insertRotors(new String[] {"B", "I", "II"});
+        mach.setPlugboard(new Permutation("(AQ)", mach.alphabet()));
+        int entries = (int) mach.compositeEntries();
+        String msg = TestUtils.UPPER_STRING.repeat(entries / 26);
+        String half = msg.substring(0, entries / 2);
+        String[] settings = {"XY", "XY", "CD"};
+        String[] expected = new String[settings.length];
+        for (int k = 0; k < settings.length; k += 1) {
+            mach.setRotors(settings[k]);
+            expected[k] = mach.convert(k == 0 ? half : msg);
+        }
+        CompositeCache cache = new CompositeCache(1 << 20, false);
+        mach.useComposite(cache);
+        for (int k = 0; k < settings.length; k += 1) {
+            mach.setRotors(settings[k]);
+            assertEquals(expected[k], mach.convert(k == 0 ? half : msg));
+            assertEquals(k == 0 ? 0 : 1, cache.misses());
+        }
+        assertEquals(0, cache.hits());
+    }
+
+    @Test
+    public void testConfigParserLayout() {
+        String rotors = "  I MQ (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ)"
+            + " (S)\n B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ)"
+            + " (LO) (MP)\n  (RX) (SZ) (TV)\n";
+        String[] configs = {
+            "A-Z 2 1\n" + rotors,
+            "\n  \r\n\nA-Z\n 2\n\n 1\n" + rotors,
+        };
+        String expected = null;
+        for (String config : configs) {
+            ConfigParser parser = new ConfigParser(config.toCharArray());
+            Machine mach = parser.parse();
+            assertEquals(26, parser.alphabet().size());
+            assertEquals(2, mach.numRotors());
+            mach.insertRotors(new String[] {"B", "I"});
+            mach.setRotors("A");
+            String result = mach.convert("HELLOWORLD");
+            if (expected == null) {
+                expected = result;
+            }
+            assertEquals(expected, result);
+        }
+    }
+
+    @Test
+    public void testConfigParserErrors() {
+        String[][] cases = {
+            {"", "configuration file truncated"},
+            {"\n \n", "configuration file truncated"},
+            {"A-Z 5", "configuration file truncated"},
+            {"A-Z 5 X\n", "configuration file truncated"},
+            {"\nAB 5 3\n", "First line must configure alphabet"},
+            {"A-Z 5 3\n(AB)\n", "Bad perm format"},
+            {"A-Z 5 3\nI\n", "bad rotor description"},
+        };
+        for (String[] c : cases) {
+            try {
+                new ConfigParser(c[0].toCharArray()).parse();
+                fail(c[0]);
+            } catch (EnigmaException excp) {
+                assertEquals(c[0], c[1], excp.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void testCompositeIntsCounted() {
+        Machine mach = navalMachine(3, 2, "B", "I", "II");
+        Alphabet ac = mach.alphabet();
+        mach.insertRotors(new String[] {"B", "I", "II"});
+        mach.setRotors("AA");
+        mach.setPlugboard(new Permutation("(AQ)", ac));
+        CompositeTable first = mach.buildComposite(false);
+        long bound = 2 * first.bytes() + first.intBytes();
+        CompositeCache cache = new CompositeCache(bound, false, 0);
+        String[] keys = new String[2];
+        CompositeTable[] tables = new CompositeTable[2];
+        for (int k = 0; k < 2; k += 1) {
+            mach.setPlugboard(new Permutation(k == 0 ? "(AQ)" : "(BQ)", ac));
+            keys[k] = mach.configurationKey();
+            tables[k] = cache.get(keys[k], mach, 0);
+        }
+        assertArrayEquals(first.ints(), cache.ints(keys[0], tables[0]));
+        assertSame(tables[0], cache.get(keys[0], mach, 0));
+        assertEquals(2, cache.misses());
+        cache.ints(keys[1], tables[1]);
+        mach.setPlugboard(new Permutation("(AQ)", ac));
+        assertNotSame(tables[0], cache.get(keys[0], mach, 0));
+        assertEquals(3, cache.misses());
+    }
+
+    @Test
+    public void testMachineCache() {
+        Machine mach = navalMachine(4, 3, "B", "I", "II", "III");
+        Alphabet ac = mach.alphabet();
+        mach.insertRotors(new String[] {"B", "I", "II", "III"});
+        mach.setRotors("QDU");
+        mach.setPlugboard(new Permutation("(YF) (HZ)", ac));
+        String expected = mach.copy().convert("ATTACKATDAWN");
+        MachineCache cache = new MachineCache(2);
+        assertNull(cache.get("a"));
+        cache.put("a", mach);
+        mach.insertRotors(new String[] {"B", "III", "II", "I"});
+        mach.setRotors("AAA");
+        cache.put("b", mach);
+        Machine cached = cache.get("a");
+        assertNotSame(mach, cached);
+        mach.configureFrom(cached);
+        assertEquals(expected, mach.convert("ATTACKATDAWN"));
+        mach.configureFrom(cache.get("a"));
+        assertEquals(expected, mach.convert("ATTACKATDAWN"));
+        cache.put("c", mach);
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+    }
+
+    @Test
+    public void testBatchEnginesMatchRotors() {
+        Machine mach = navalMachine(4, 3, "B", "I", "II", "III");
+        Alphabet ac = mach.alphabet();
+        mach.insertRotors(new String[] {"B", "I", "II", "III"});
+        String msg = "Attack at dawn! " + TestUtils.UPPER_STRING.repeat(400);
+        mach.setRotors("QDU");
+        mach.setPlugboard(new Permutation("(YF) (HZ)", ac));
+        String expected = mach.convert(msg);
+        for (String name : new String[] {"scalar", "vector"}) {
+            for (double breakEven : new double[] {0, 1}) {
+                CompositeCache cache =
+                    new CompositeCache(1 << 24, false, breakEven);
+                mach.useComposite(cache);
+                mach.useEngine(BatchEngine.forName(name));
+                mach.setRotors("QDU");
+                assertEquals(name, expected, mach.copy().convert(msg));
+                assertEquals(name, expected, mach.convert(msg));
+                assertEquals(breakEven == 0 ? 1 : 0, cache.misses());
+                mach.useEngine(null);
+                mach.useComposite(null);
+            }
+        }
+    }
+
+    @Test
+    public void testConvertAsciiMatchesConvert() {
+        Machine mach = navalMachine(4, 3, "B", "I", "II", "III");
+        Alphabet ac = mach.alphabet();
+        mach.insertRotors(new String[] {"B", "I", "II", "III"});
+        byte[] bytes = new byte[10000];
+        new Random(7).nextBytes(bytes);
+        char[] chars = new char[bytes.length];
+        for (int i = 0; i < bytes.length; i += 1) {
+            chars[i] = (char) (bytes[i] & 0xff);
+        }
+        mach.setRotors("QDU");
+        mach.setPlugboard(new Permutation("(YF) (HZ)", ac));
+        String expected = mach.convert(new String(chars));
+        for (String name : new String[] {null, "scalar", "vector"}) {
+            mach.useComposite(new CompositeCache(1 << 24, false, 0));
+            mach.useEngine(name == null ? null : BatchEngine.forName(name));
+            mach.setRotors("QDU");
+            byte[] out = bytes.clone();
+            int n = mach.convertAscii(out, 0, out.length, out, 0);
+            assertEquals(name, expected,
+                         new String(out, 0, n, StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test
+    public void testParallelMatchesSerialAcrossNotches() {
+        Machine mach = navalMachine(4, 3, "B", "I", "II", "III");
+        mach.insertRotors(new String[] {"B", "I", "II", "III"});
+        String msg = "Attack, at dawn! " + TestUtils.UPPER_STRING.repeat(8);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (String setting : new String[] {"ADT", "QEU", "AAV"}) {
+                mach.setRotors(setting);
+                String expected = mach.convert(msg + msg);
+                for (int threshold = 2; threshold < 64; threshold += 1) {
+                    ParallelConverter parallel =
+                        new ParallelConverter(pool, threshold);
+                    mach.setRotors(setting);
+                    char[] buf = msg.toCharArray();
+                    int n = parallel.convert(mach, buf, 0, buf.length);
+                    String where = setting + " split " + threshold;
+                    assertEquals(where, expected.substring(0, n),
+                                 new String(buf, 0, n));
+                    assertEquals(where, expected.substring(n),
+                                 mach.convert(msg));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testMachineImage() throws IOException {
+        Machine mach = navalMachine(4, 2, "B", "Beta", "I", "VI");
+        File file = File.createTempFile("enigma", ".img");
+        file.deleteOnExit();
+        MachineImage.write(mach, file.getPath());
+        assertTrue(MachineImage.isImage(file.getPath()));
+        Machine loaded = MachineImage.load(file.getPath());
+        assertEquals(4, loaded.numRotors());
+        assertEquals(2, loaded.numPawls());
+        String[] rotors = {"B", "BETA", "I", "VI"};
+        String msg = TestUtils.UPPER_STRING.repeat(30);
+        mach.insertRotors(rotors);
+        mach.setRotors("AQZ");
+        loaded.insertRotors(rotors);
+        loaded.setRotors("AQZ");
+        assertEquals(mach.convert(msg), loaded.convert(msg));
+        for (Rotor rotor : loaded.allRotors()) {
+            if (rotor.name().equals("Beta")) {
+                assertEquals(TestUtils.NAVALA.get("Beta").replace(" ", ""),
+                             rotor.permutation().cycles());
+            }
+        }
+    }
+
+    @Test
+    public void testBombeFindsKey() {
+        Machine mach = navalMachine(3, 2, "B", "C", "I", "II", "III");
+        Alphabet ac = mach.alphabet();
+        mach.insertRotors(new String[] {"C", "III", "I"});
+        mach.setRotors("QD");
+        mach.setPlugboard(new Permutation("(AK) (MZ) (TU)", ac));
+        String plain = "XXATTACKATDAWNFROMTHEWESTERNRIDGE";
+        String cipher = mach.convert(plain);
+        Bombe bombe = new Bombe(mach, 2);
+        List<Bombe.Key> keys =
+            bombe.search(cipher, plain.substring(2, 26), 2,
+                         bombe.rotorOrders());
+        assertEquals(12 * 26 * 26, bombe.positionsTested());
+        boolean found = false;
+        for (Bombe.Key key : keys) {
+            if (key.toString().startsWith("* C III I QD ")) {
+                found = true;
+                assertTrue(key.plugboard().contains("(AK)"));
+                assertTrue(key.plugboard().contains("(TU)"));
+            }
+        }
+        assertTrue(found);
+    }
+
+    @Test
+    public void testPlugboard() {
+        Alphabet ac = new CharacterRange('A', 'Z');
+        Plugboard board = new Plugboard(ac, "(AB) (CD)");
+        assertEquals(2, board.pairs());
+        board.connect(1, 2);
+        assertEquals("(BC)", board.toString());
+        assertEquals(0, board.partner(0));
+        assertEquals(3, board.partner(3));
+        board.connect(25, 0);
+        board.disconnect(2);
+        assertEquals("(AZ)", board.toString());
+        assertEquals(1, board.pairs());
+        assertEquals('Z', board.permutation().permute('A'));
+    }
+
+    @Test
+    public void testSolverRecoversPlugboard() {
+        Machine mach = navalMachine(3, 2, "B", "I", "II");
+        Alphabet ac = mach.alphabet();
+        String[] rotors = {"B", "II", "I"};
+        mach.insertRotors(rotors);
+        mach.setRotors("KX");
+        mach.setPlugboard(new Permutation("(AM) (FK) (TW) (EQ)", ac));
+        String plain = "ITWASTHEBESTOFTIMESITWASTHEWORSTOFTIMESITWASTHEAGE"
+            + "OFWISDOMITWASTHEAGEOFFOOLISHNESSITWASTHEEPOCHOFBELIEF"
+            + "ITWASTHEEPOCHOFINCREDULITYITWASTHESEASONOFLIGHT";
+        String cipher = mach.convert(plain);
+        PlugboardSolver solver = new PlugboardSolver(mach,
+                NgramScorer.fromText(ac, plain, 3), 2);
+        List<PlugboardSolver.Solution> solutions =
+            solver.solve(cipher, List.of(new Bombe.Key(rotors, "KX", "")),
+                         4);
+        assertEquals(1, solutions.size());
+        assertEquals(plain, solutions.get(0).plaintext());
+        assertEquals("(AM) (EQ) (FK) (TW)",
+                     solutions.get(0).key().plugboard());
+    }
+
+    @Test
+    public void testMultiKeyEngineMatchesMachines() {
+        Machine mach = navalMachine(5, 3, "B", "C", "Beta", "Gamma", "I",
+                                    "II", "III", "IV", "V");
+        Alphabet ac = mach.alphabet();
+        ArrayList<Bombe.Key> keys = new ArrayList<>();
+        keys.add(new Bombe.Key(new String[] {"B", "BETA", "III", "IV", "I"},
+                               "AXLE", "(HQ) (EX) (IP) (TR) (BY)"));
+        keys.add(new Bombe.Key(new String[] {"C", "GAMMA", "V", "II", "I"},
+                               "ZQDV", ""));
+        keys.add(new Bombe.Key(new String[] {"B", "BETA", "IV", "V", "III"},
+                               "QEUZ", "(AZ)"));
+        MultiKeyEngine engine = new MultiKeyEngine(mach);
+        engine.setKeys(keys);
+        String msg = TestUtils.UPPER_STRING.repeat(30);
+        int[] text = new int[msg.length()];
+        for (int j = 0; j < text.length; j += 1) {
+            text[j] = ac.toInt(msg.charAt(j));
+        }
+        engine.convert(text, text.length);
+        NgramScorer ioc = NgramScorer.ioc(ac);
+        double[] scores = engine.scores(ioc);
+        String first = null;
+        for (int k = 0; k < keys.size(); k += 1) {
+            Bombe.Key key = keys.get(k);
+            mach.insertRotors(key.rotors());
+            mach.setRotors(key.setting());
+            mach.setPlugboard(new Permutation(key.plugboard(), ac));
+            String expected = mach.convert(msg);
+            assertEquals(key.toString(), expected, engine.outputString(k));
+            if (k == 0) {
+                first = expected;
+            }
+            int[] out = engine.output(k, null);
+            assertEquals(ioc.score(out, out.length), scores[k], 0);
+        }
+        engine.reset();
+        engine.convert(text, 5);
+        assertEquals(first.substring(0, 5), engine.outputString(0));
+    }
+
+    @Test
+    public void testServerConvertsRequests() throws Exception {
+        Machine mach = navalMachine(4, 3, "B", "I", "II", "III");
+        Alphabet ac = mach.alphabet();
+        Server server = new Server(mach);
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                          0));
+        Thread serving = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException excp) {
+                throw new AssertionError(excp);
+            }
+        });
+        serving.start();
+        try (Client client = new Client(server.address())) {
+            String request = "* B I II III AAA (AQ)\nHello world\n\n";
+            mach.insertRotors(new String[] {"B", "I", "II", "III"});
+            mach.setRotors("AAA");
+            mach.setPlugboard(new Permutation("(AQ)", ac));
+            String expected = mach.convert("HELLOWORLD");
+            expected = expected.substring(0, 5) + " "
+                + expected.substring(5) + "\n\n";
+            assertEquals(expected, client.send(request));
+            assertEquals(expected, client.send(request));
+            assertEquals("Error: Message with no config\n",
+                         client.send("HELLO\n"));
+            assertEquals("\n", client.send("* B I II III AAA\n.\n"));
+            assertTrue(client.send("* B I II III AA\nHELLO\n")
+                       .startsWith("Error: "));
+            assertEquals(expected, client.send(request));
+        } finally {
+            server.stop();
+            serving.join();
+        }
+    }
+
+    @Test
+    public void testBatchRunnerReportsFilesSeparately() throws IOException {
+        Machine mach = navalMachine(3, 2, "B", "I", "II");
+        Path dir = Files.createTempDirectory("enigma");
+        Files.writeString(dir.resolve("a.inp"), "* B I II AB\nHELLO\n");
+        Files.writeString(dir.resolve("b.inp"), "HELLO\n");
+        Files.writeString(dir.resolve("c.inp"), "* B I II BA\nWORLD\n");
+        Files.writeString(dir.resolve("d.txt"), "HELLO\n");
+        Files.writeString(dir.resolve("e.inp"), "* B I II A\nHELLO\n");
+        List<Path> inputs = BatchRunner.inputs(dir.toString());
+        assertEquals(4, inputs.size());
+        assertEquals(2, new BatchRunner(mach, 2).run(inputs, null));
+        mach.insertRotors(new String[] {"B", "I", "II"});
+        mach.setRotors("AB");
+        assertEquals(mach.convert("HELLO") + "\n",
+                     Files.readString(dir.resolve("a.out")));
+        mach.setRotors("BA");
+        assertEquals(mach.convert("WORLD") + "\n",
+                     Files.readString(dir.resolve("c.out")));
+        assertEquals(2, BatchRunner.inputs(dir + "/[ac].inp").size());
+        for (String name : new String[] {"a.inp", "b.inp", "c.inp",
+                                         "d.txt", "e.inp", "a.out",
+                                         "b.out", "c.out", "e.out"}) {
+            Files.deleteIfExists(dir.resolve(name));
+        }
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testMappedMatchesStream() throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        Path config = navalConfig(dir);
+        String[] inputs = {
+            "\n* B I II III AAA (AQ)\r\nHello world\r\n\r\nabc def\r\n",
+            "* B I II III QEV\n\n\nattack at dawn\n* B I II III AAA\n"
+            + "x".repeat(10000) + "\r\n\r\nlast",
+            "* B I II III AAA\n",
+        };
+        Path input = dir.resolve("in.inp");
+        Path streamed = dir.resolve("stream.out");
+        Path mapped = dir.resolve("mapped.out");
+        for (String text : inputs) {
+            Files.writeString(input, text);
+            Main.main(config.toString(), input.toString(),
+                      streamed.toString());
+            Main.main("--mmap", config.toString(), input.toString(),
+                      mapped.toString());
+            assertEquals(Files.readString(streamed),
+                         Files.readString(mapped));
+        }
+        for (Path file : new Path[] {config, input, streamed, mapped}) {
+            Files.delete(file);
+        }
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testJobsMatchSerialAcrossChunks() throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        Path config = navalConfig(dir);
+        Path input = dir.resolve("in.inp");
+        Path serial = dir.resolve("serial.out");
+        Path blocks = dir.resolve("blocks.out");
+        String first = "* B I II III AAA (AQ)\n";
+        for (int len = Main.CHUNK_SIZE - first.length() - 3;
+             len <= Main.CHUNK_SIZE - first.length() + 1; len += 1) {
+            String text = "\n" + first + "x".repeat(len)
+                + "\n* B III II I QEV\r\n* B I II III ZZZ\nHello world\n"
+                + "y".repeat(2 * Main.CHUNK_SIZE + len) + "\n\nend";
+            Files.writeString(input, text);
+            Main.main(config.toString(), input.toString(), serial.toString());
+            Main.main("--jobs=3", config.toString(), input.toString(),
+                      blocks.toString());
+            assertEquals("length " + len, Files.readString(serial),
+                         Files.readString(blocks));
+        }
+        for (Path file : new Path[] {config, input, serial, blocks}) {
+            Files.delete(file);
+        }
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        assertEquals(0, Metrics.bucket(0));
+        assertEquals(1, Metrics.bucket(1));
+        assertEquals(11, Metrics.bucket(1500));
+        Metrics.enable();
+        MetricsMXBean bean = JMX.newMXBeanProxy(
+            ManagementFactory.getPlatformMBeanServer(),
+            new ObjectName(Metrics.OBJECT_NAME), MetricsMXBean.class);
+        bean.reset();
+        Metrics.count(Metrics.CHARACTERS, 40);
+        Metrics.count(Metrics.MESSAGES, 2);
+        Metrics.finish(Metrics.CONVERT, Metrics.start(), 40);
+        assertEquals(40, bean.getCharacters());
+        assertEquals(2, bean.getMessages());
+        long[] histogram = bean.histogram("convert");
+        long total = 0;
+        for (long h : histogram) {
+            total += h;
+        }
+        assertEquals(1, total);
+        assertTrue(bean.getSummary().contains("characters"));
+        bean.reset();
+        assertEquals(0, bean.getCharacters());
+    }
+
+    @Test
+    public void testMessageReaderLineEnds() {
+        for (int chunk = 1; chunk <= 5; chunk += 1) {
+            for (int most = 1; most <= 3; most += 1) {
+                String where = "chunk " + chunk + ", reads of " + most;
+                assertEquals(where, List.of("ab", "cd", "", "e"),
+                             lines("ab\r\ncd\r\n\r\ne", chunk, most));
+                assertEquals(where, List.of("abcdefghijk", "", "lm"),
+                             lines("abcdefghijk\r\rlm\n", chunk, most));
+                assertEquals(where, List.of("x", "", ""),
+                             lines("x\n\r\n\n", chunk, most));
+            }
+        }
+        MessageReader in =
+            new MessageReader(trickle("* B\r\nabcdefgh\r\nz", 2), 3);
+        assertTrue(in.nextLine());
+        assertEquals('*', in.peek());
+        assertEquals("* B", in.restOfLine());
+        assertTrue(in.nextLine());
+        char[] part = new char[3];
+        assertEquals(3, in.read(part, 0, 3));
+        assertEquals("abc", new String(part));
+        assertTrue(in.nextLine());
+        assertEquals("z", in.restOfLine());
+        assertEquals(-1, in.peek());
+        assertFalse(in.nextLine());
+    }
+
+    /** Return the lines of TEXT as read by a MessageReader with a buffer
+     *  of CHUNK characters from a source that supplies at most MOST
+     *  characters per read, reading each line in pieces of 2. */
+    private static List<String> lines(String text, int chunk, int most) {
+        MessageReader in = new MessageReader(trickle(text, most), chunk);
+        ArrayList<String> result = new ArrayList<>();
+        char[] part = new char[2];
+        while (in.nextLine()) {
+            StringBuilder line = new StringBuilder();
+            for (int n; (n = in.read(part, 0, part.length)) >= 0;) {
+                line.append(part, 0, n);
+            }
+            result.add(line.toString());
+        }
+        return result;
+    }
+
+    /** Return a reader of TEXT that supplies at most MOST characters per
+     *  read, as a pipe or socket may. */
+    private static Reader trickle(String text, int most) {
+        return new FilterReader(new StringReader(text)) {
+            @Override
+            public int read(char[] buf, int off, int len) throws IOException {
+                return super.read(buf, off, Math.min(len, most));
+            }
+        };
+    }
+
+    /** Return a configuration file, written in DIR, for reflector B and
+     *  rotors I, II and III in a machine with 4 slots and 3 pawls. */
+    private static Path navalConfig(Path dir) throws IOException {
+        Path config = dir.resolve("naval.conf");
+        Files.writeString(config, "A-Z 4 3\n"
+                          + " B R " + TestUtils.NAVALA.get("B") + "\n"
+                          + " I MQ " + TestUtils.NAVALA.get("I") + "\n"
+                          + " II ME " + TestUtils.NAVALA.get("II") + "\n"
+                          + " III MV " + TestUtils.NAVALA.get("III") + "\n");
+        return config;
+    }
+
+    /** Return a machine with NUMROTORS slots and PAWLS pawls whose
+     *  available rotors are the naval rotors NAMES (as named in
+     *  TestUtils.NAVALA): reflectors B and C, fixed rotors Beta and Gamma,
+     *  and moving rotors with their usual notches. */
+    private static Machine navalMachine(int numRotors, int pawls,
+                                        String... names) {
+        Alphabet ac = new CharacterRange('A', 'Z');
+        ArrayList<Rotor> allRotors = new ArrayList<>();
+        for (String name : names) {
+            Permutation perm = new Permutation(TestUtils.NAVALA.get(name), ac);
+            if (name.equals("B") || name.equals("C")) {
+                allRotors.add(new Reflector(name, perm));
+            } else if (name.equals("Beta") || name.equals("Gamma")) {
+                allRotors.add(new FixedRotor(name, perm));
+            } else {
+                allRotors.add(new MovingRotor(name, perm,
+                                              NAVAL_NOTCHES.get(name)));
+            }
+        }
+        return new Machine(ac, numRotors, pawls, allRotors);
+    }
+
+    /** Notches of the naval moving rotors. */
+    private static final Map<String, String> NAVAL_NOTCHES = Map.of(
+        "I", "Q", "II", "E", "III", "V", "IV", "J", "V", "Z",
+        "VI", "ZM", "VII", "ZM", "VIII", "ZM");
+
+    /** Check, for the machine with alphabet ALPH, rotors MACHINEROTORS
+     *  (all inserted in order) and PAWLS pawls, that seek and advance
+     *  agree with stepping one conversion at a time from each of
+     *  SETTINGS. */
+    private void checkAdvance(Alphabet alph, Rotor[] machineRotors,
+                              int pawls, String... settings) {
+        String[] names = new String[machineRotors.length];
+        for (int i = 0; i < names.length; i += 1) {
+            names[i] = machineRotors[i].name();
+        }
+        Machine mach = new Machine(alph, names.length, pawls,
+                new ArrayList<>(Arrays.asList(machineRotors)));
+        mach.insertRotors(names);
+        for (String setting : settings) {
+            mach.setRotors(setting);
+            ArrayList<String> expected = new ArrayList<>();
+            for (int n = 0; n < 1500; n += 1) {
+                expected.add(getSetting(alph, machineRotors));
+                mach.convert(0);
+            }
+            for (int n = 0; n < expected.size(); n += 1) {
+                mach.seek(n);
+                assertEquals(setting + " after " + n, expected.get(n),
+                        getSetting(alph, machineRotors));
+            }
+            for (int a = 0; a < 60; a += 7) {
+                for (int b = 0; b < 1400; b += 13) {
+                    mach.seek(a);
+                    mach.advance(b);
+                    assertEquals(setting + " after " + a + "+" + b,
+                            expected.get(a + b),
+                            getSetting(alph, machineRotors));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testGroupedWriter() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GroupedWriter out =
+            new GroupedWriter(Channels.newChannel(bytes),
+                              StandardCharsets.UTF_8, 0, false);
+        String nl = System.lineSeparator();
+        out.putGroups("ABCDEFG".toCharArray(), 0, 7);
+        out.putGroups("xHIJKLM".toCharArray(), 1, 3);
+        out.endLine();
+        out.putGroups("\u00e9\u4e2d\ud83d\ude00ab\ud83d".toCharArray(),
+                      0, 7);
+        out.endLine();
+        out.write("raw  text" + nl);
+        out.putGroups("ABCDE".toCharArray(), 0, 5);
+        out.endLine();
+        for (int i = 0; i < 100; i += 1) {
+            out.putGroups("ABCDE".toCharArray(), 0, 5);
+        }
+        out.flush();
+        String expected = "ABCDE FGHIJ" + nl
+            + "\u00e9\u4e2d\ud83d\ude00a b?" + nl
+            + "raw  text" + nl + "ABCDE" + nl
+            + String.join(" ", Collections.nCopies(100, "ABCDE"));
+        assertEquals(expected, bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testSymbolAlphabetLookups() {
+        StringBuilder sparse = new StringBuilder("09AZ");
+        for (int k = 0; k < 300; k += 1) {
+            sparse.append((char) (0x400 + k * 211));
+        }
+        for (String symbols : new String[] { "0123456789", sparse.toString(),
+                                             "\u0041\uffff\u0000" }) {
+            SymbolAlphabet alpha = new SymbolAlphabet(symbols);
+            assertEquals(symbols.length(), alpha.size());
+            for (int i = 0; i < symbols.length(); i += 1) {
+                assertEquals(symbols.charAt(i), alpha.toChar(i));
+                assertEquals(i, alpha.toInt(symbols.charAt(i)));
+            }
+            for (char c = 0; c < Character.MAX_VALUE; c += 1) {
+                assertEquals(symbols.indexOf(c) >= 0, alpha.contains(c));
+            }
+        }
+        IntegerRange ints = new IntegerRange("0123");
+        try {
+            ints.toInt('4');
+            fail("missing error");
+        } catch (EnigmaException excp) {
+            assertEquals("integer out of range", excp.getMessage());
+        }
+        try {
+            new CharacterRange('A', 'Z').toChar(26);
+            fail("missing error");
+        } catch (EnigmaException excp) {
+            assertEquals("character index out of range", excp.getMessage());
+        }
+    }
+
     /** Helper method to get the String representation of the
      * current Rotor settings. */
     private String getSetting(Alphabet alph, Rotor[] machineRotors) {
@@ -15,8 +15,26 @@ class MovingRotor extends Rotor {
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
         _notches = notches;
+        _notchAt = new boolean[size()];
+        for (int i = 0; i < notches.length(); i += 1) {
+            _notchAt[alphabet().toInt(notches.charAt(i))] = true;
+        }
+    }
 
+    /** A rotor named NAME whose permutation in its default setting is
+     *  PERM, and whose Kth setting is a notch iff NOTCHAT[K]. */
+    MovingRotor(String name, Permutation perm, boolean[] notchAt) {
+        super(name, perm);
+        _notchAt = notchAt;
+        StringBuilder notches = new StringBuilder();
+        for (int k = 0; k < notchAt.length; k += 1) {
+            if (notchAt[k]) {
+                notches.append(alphabet().toChar(k));
+            }
+        }
+        _notches = notches.toString();
     }
+
     /** Returns TRUE if the rotor moves. */
     boolean rotates() {
         return true;
@@ -24,15 +42,13 @@ class MovingRotor extends Rotor {
 
     /** Returns TRUE if the moving rotor is at a notch. */
     boolean atNotch() {
-        int i = 0;
-        while (i < _notches.length()) {
-            char value = _notches.charAt(i);
-            int index = alphabet().toInt(value);
-            if (setting() == index) {
-                return true;
-            }
-            i++;
-        } return false;
+        return _notchAt[permutation().wrap(setting())];
+    }
+
+    /** Return a table whose Kth entry is true iff K is a notch setting.
+     *  The table is shared, not copied. */
+    boolean[] notchTable() {
+        return _notchAt;
     }
 
     @Override
@@ -46,4 +62,7 @@ class MovingRotor extends Rotor {
 
     /** The alphabet ring's notches. */
     private String _notches;
+
+    /** Settings at which I am at a notch, indexed by setting. */
+    private final boolean[] _notchAt;
 }
@@ -88,7 +88,13 @@ public class MovingRotorTest {
     public void convertForward() {
         Alphabet ac = new CharacterRange('A', 'D');
         Rotor two = new Rotor("R2", new Permutation("(ABCD)", ac));
-
+        assertEquals(1, two.convertForward(0));
+        two.set(1);
+        assertEquals(1, two.convertForward(0));
+        assertEquals(3, two.convertBackward(0));
+        two.permutation().setCycles("(AB)");
+        assertEquals(3, two.convertForward(0));
+        assertEquals(3, two.convertBackward(0));
     }
 
 }
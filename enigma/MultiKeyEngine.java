@@ -0,0 +1,241 @@
+package enigma;
+
+import java.util.HashMap;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** Converts one text under many keys at once, for key searches that try
+ *  a short ciphertext under thousands of candidate settings.  Rather
+ *  than a Machine (with its own rotor objects and lists) per key, the
+ *  states of all K keys are kept in primitive arrays indexed by rotor
+ *  slot and then by key (structure of arrays): the setting of slot I
+ *  under key K is _setting[I][K], and so on.  Each character of the text
+ *  is converted under every key before the next, in a few tight loops
+ *  over the keys: one per slot to step the rotors, as Machine does, and
+ *  one per slot to pass the characters through it.  Rotor tables are
+ *  the rotors' own compiled ones (see Rotor.forwardTable()), shared by
+ *  all keys using a rotor, so the working set stays small.  An engine is
+ *  not thread-safe; use one per thread.
+ *  @author Roland Li
+ */
+class MultiKeyEngine {
+
+    /** An engine for machines like MACHINE: with its alphabet, number
+     *  of rotor slots, and available rotors. */
+    MultiKeyEngine(Machine machine) {
+        _alphabet = machine.alphabet();
+        _numRotors = machine.numRotors();
+        _byName = new HashMap<>();
+        for (Rotor rotor : machine.allRotors()) {
+            _byName.putIfAbsent(rotor.name().toUpperCase(), rotor);
+        }
+        setKeys(List.of());
+    }
+
+    /** Use KEYS from now on, each with its rotors at their initial
+     *  settings.  Each key names my number of rotors, reflector first,
+     *  and gives a setting for each but the reflector; its plugboard
+     *  must consist of pairs. */
+    void setKeys(List<Bombe.Key> keys) {
+        int n = _numRotors;
+        int size = _alphabet.size();
+        int count = keys.size();
+        _keys = count;
+        _forward = new int[n][count][];
+        _backward = new int[n][count][];
+        _notches = new boolean[n][count][];
+        _rotates = new boolean[n][count];
+        _carries = new boolean[n][count];
+        _setting = new int[n][count];
+        _start = new int[n][count];
+        _plug = new int[count * size];
+        _letter = new int[count];
+        for (int k = 0; k < count; k += 1) {
+            Bombe.Key key = keys.get(k);
+            String[] names = key.rotors();
+            String setting = key.setting();
+            if (names.length != n) {
+                throw error("wrong number of rotors");
+            }
+            if (setting.length() != n - 1) {
+                throw error("wrong number of settings");
+            }
+            for (int i = 0; i < n; i += 1) {
+                Rotor rotor = _byName.get(names[i].toUpperCase());
+                if (rotor == null) {
+                    throw error("Bad rotor name");
+                }
+                if (i == 0 && !rotor.reflecting()) {
+                    throw error("Reflector must be placed at beginning");
+                }
+                _forward[i][k] = rotor.forwardTable();
+                _backward[i][k] = rotor.backwardTable();
+                _rotates[i][k] = rotor.rotates();
+                if (rotor instanceof MovingRotor) {
+                    _notches[i][k] = ((MovingRotor) rotor).notchTable();
+                }
+                _carries[i][k] = i > 0 && _notches[i][k] != null
+                    && _rotates[i - 1][k];
+                _start[i][k] =
+                    i == 0 ? 0 : _alphabet.toInt(setting.charAt(i - 1));
+            }
+            int[] wiring = new Plugboard(_alphabet, key.plugboard())
+                .wiring();
+            System.arraycopy(wiring, 0, _plug, k * size, size);
+        }
+        reset();
+    }
+
+    /** Return the number of keys in use. */
+    int keys() {
+        return _keys;
+    }
+
+    /** Return my rotors to the initial settings of their keys. */
+    void reset() {
+        for (int i = 0; i < _numRotors; i += 1) {
+            System.arraycopy(_start[i], 0, _setting[i], 0, _keys);
+        }
+    }
+
+    /** Convert the first LEN letters of TEXT (alphabet indices) under
+     *  every key, continuing from the keys' current settings, so that
+     *  output(K, ...) gives the result under key K. */
+    void convert(int[] text, int len) {
+        if (_output.length < len * _keys) {
+            _output = new int[len * _keys];
+        }
+        _length = len;
+        int n = _numRotors;
+        int size = _alphabet.size();
+        int[] letter = _letter;
+        for (int j = 0; j < len; j += 1) {
+            step();
+            int c = text[j];
+            for (int k = 0; k < _keys; k += 1) {
+                letter[k] = _plug[k * size + c];
+            }
+            for (int i = n - 1; i >= 0; i -= 1) {
+                through(_forward[i], _setting[i]);
+            }
+            for (int i = 1; i < n; i += 1) {
+                through(_backward[i], _setting[i]);
+            }
+            int row = j * _keys;
+            for (int k = 0; k < _keys; k += 1) {
+                _output[row + k] = _plug[k * size + letter[k]];
+            }
+        }
+    }
+
+    /** Return the output of the last convert under key K as alphabet
+     *  indices, in RESULT if it is long enough, and otherwise in a new
+     *  array. */
+    int[] output(int k, int[] result) {
+        if (result == null || result.length < _length) {
+            result = new int[_length];
+        }
+        for (int j = 0; j < _length; j += 1) {
+            result[j] = _output[j * _keys + k];
+        }
+        return result;
+    }
+
+    /** Return the output of the last convert under key K. */
+    String outputString(int k) {
+        char[] result = new char[_length];
+        for (int j = 0; j < _length; j += 1) {
+            result[j] = _alphabet.toChar(_output[j * _keys + k]);
+        }
+        return new String(result);
+    }
+
+    /** Return the score by SCORER of the output of the last convert
+     *  under each key, indexed by key. */
+    double[] scores(NgramScorer scorer) {
+        double[] result = new double[_keys];
+        int[] text = new int[_length];
+        for (int k = 0; k < _keys; k += 1) {
+            result[k] = scorer.score(output(k, text), _length);
+        }
+        return result;
+    }
+
+    /** Advance the rotors under every key as for one keypress, deciding
+     *  as Machine.step does from the settings before the keypress. */
+    private void step() {
+        int last = _numRotors - 1;
+        int size = _alphabet.size();
+        for (int i = 1; i <= last; i += 1) {
+            int[] setting = _setting[i];
+            boolean[] rotates = _rotates[i];
+            boolean[] carries = _carries[i];
+            boolean[][] notches = _notches[i];
+            boolean[] nextCarries = i < last ? _carries[i + 1] : null;
+            boolean[][] nextNotches = i < last ? _notches[i + 1] : null;
+            int[] nextSetting = i < last ? _setting[i + 1] : null;
+            for (int k = 0; k < _keys; k += 1) {
+                if (rotates[k]
+                    && (i == last
+                        || carries[k] && notches[k][setting[k]]
+                        || nextCarries[k]
+                           && nextNotches[k][nextSetting[k]])) {
+                    int posn = setting[k] + 1;
+                    setting[k] = posn == size ? 0 : posn;
+                }
+            }
+        }
+    }
+
+    /** Replace each key's current letter with its conversion by the
+     *  table of TABLES for that key at the setting in SETTING. */
+    private void through(int[][] tables, int[] setting) {
+        int size = _alphabet.size();
+        int[] letter = _letter;
+        for (int k = 0; k < _keys; k += 1) {
+            letter[k] = tables[k][setting[k] * size + letter[k]];
+        }
+    }
+
+    /** Alphabet of my machines. */
+    private final Alphabet _alphabet;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** Available rotors by upper-case name. */
+    private final HashMap<String, Rotor> _byName;
+
+    /** Number of keys. */
+    private int _keys;
+
+    /** Forward and backward tables of the rotor in each slot under each
+     *  key. */
+    private int[][][] _forward, _backward;
+
+    /** Notch table of the rotor in each slot under each key, or null if
+     *  it is not a MovingRotor. */
+    private boolean[][][] _notches;
+
+    /** Whether the rotor in each slot under each key rotates, and
+     *  whether it is carried by its notches (see Machine). */
+    private boolean[][] _rotates, _carries;
+
+    /** Current and initial setting of each slot under each key. */
+    private int[][] _setting, _start;
+
+    /** Plugboard of key K, as a table of partners, at K * alphabet size
+     *  onward. */
+    private int[] _plug;
+
+    /** Letter being converted under each key. */
+    private int[] _letter;
+
+    /** Output of the last convert: letter J under key K at
+     *  J * _keys + K. */
+    private int[] _output = new int[0];
+
+    /** Length of the last text converted. */
+    private int _length;
+}
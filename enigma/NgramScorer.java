@@ -0,0 +1,202 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** Scores candidate plaintexts, given as arrays of alphabet indices, by
+ *  how much they look like the language of some sample: either by index
+ *  of coincidence, or by the sum of the log probabilities of their
+ *  n-grams (bigrams, quadgrams, ...).  N-gram log probabilities are kept
+ *  in a single float array indexed by the n-gram read as a number in
+ *  base alphabet-size, and are shared by copies of a scorer; scoring
+ *  allocates nothing.  A scorer is not thread-safe, but its copies (see
+ *  NgramScorer(NgramScorer)) may be used concurrently.
+ *  @author Roland Li
+ */
+class NgramScorer {
+
+    /** Return a scorer for ALPHABET by index of coincidence. */
+    static NgramScorer ioc(Alphabet alphabet) {
+        return new NgramScorer(alphabet.size(), 1, null);
+    }
+
+    /** Return a scorer for ALPHABET using the N-grams of TEXT, ignoring
+     *  characters not in ALPHABET after conversion to upper case. */
+    static NgramScorer fromText(Alphabet alphabet, CharSequence text, int n) {
+        int size = alphabet.size();
+        long[] counts = new long[tableSize(size, n)];
+        int mod = counts.length / size;
+        int index = 0;
+        int run = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            char c = Character.toUpperCase(text.charAt(i));
+            if (alphabet.contains(c)) {
+                index = (index % mod) * size + alphabet.toInt(c);
+                run += 1;
+                if (run >= n) {
+                    counts[index] += 1;
+                }
+            }
+        }
+        return new NgramScorer(size, n, logProbabilities(counts));
+    }
+
+    /** Return a scorer for ALPHABET using the n-gram counts read from
+     *  SOURCE, one per line, as an n-gram and its count separated by
+     *  whitespace (as in widely published n-gram tables).  All n-grams
+     *  must have the same length; those with characters not in ALPHABET
+     *  are ignored. */
+    static NgramScorer load(Alphabet alphabet, Reader source)
+        throws IOException {
+        BufferedReader lines = new BufferedReader(source);
+        int size = alphabet.size();
+        long[] counts = null;
+        int n = 0;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            int space = 0;
+            while (space < line.length()
+                   && !Character.isWhitespace(line.charAt(space))) {
+                space += 1;
+            }
+            String gram = line.substring(0, space).toUpperCase();
+            if (counts == null) {
+                n = gram.length();
+                counts = new long[tableSize(size, n)];
+            } else if (gram.length() != n) {
+                throw error("n-grams of different lengths: %s", gram);
+            }
+            long count;
+            try {
+                count = Long.parseLong(line.substring(space).trim());
+            } catch (NumberFormatException excp) {
+                throw error("bad n-gram count: %s", line);
+            }
+            int index = 0;
+            boolean ok = true;
+            for (int i = 0; i < n && ok; i += 1) {
+                ok = alphabet.contains(gram.charAt(i));
+                if (ok) {
+                    index = index * size + alphabet.toInt(gram.charAt(i));
+                }
+            }
+            if (ok) {
+                counts[index] += count;
+            }
+        }
+        if (counts == null) {
+            throw error("no n-grams found");
+        }
+        return new NgramScorer(size, n, logProbabilities(counts));
+    }
+
+    /** A copy of OTHER, sharing its tables, for use on another thread. */
+    NgramScorer(NgramScorer other) {
+        this(other._size, other._n, other._logProb);
+    }
+
+    /** A scorer of N-grams over an alphabet of SIZE characters, with log
+     *  probabilities LOGPROB, or by index of coincidence if LOGPROB is
+     *  null. */
+    private NgramScorer(int size, int n, float[] logProb) {
+        _size = size;
+        _n = n;
+        _logProb = logProb;
+        _counts = new int[size];
+    }
+
+    /** Return the n-gram length, or 1 for index of coincidence. */
+    int n() {
+        return _n;
+    }
+
+    /** Return the score of the first LEN letters of TEXT (alphabet
+     *  indices).  Higher scores are more language-like. */
+    double score(int[] text, int len) {
+        if (_logProb == null) {
+            return ioc(text, len);
+        }
+        int mod = _logProb.length / _size;
+        int index = 0;
+        double sum = 0;
+        for (int i = 0; i < len; i += 1) {
+            index = (index % mod) * _size + text[i];
+            if (i >= _n - 1) {
+                sum += _logProb[index];
+            }
+        }
+        return sum;
+    }
+
+    /** Return the index of coincidence of the first LEN letters of
+     *  TEXT. */
+    private double ioc(int[] text, int len) {
+        if (len < 2) {
+            return 0;
+        }
+        Arrays.fill(_counts, 0);
+        for (int i = 0; i < len; i += 1) {
+            _counts[text[i]] += 1;
+        }
+        long sum = 0;
+        for (int count : _counts) {
+            sum += (long) count * (count - 1);
+        }
+        return (double) sum / ((long) len * (len - 1));
+    }
+
+    /** Return the number of N-grams over an alphabet of SIZE. */
+    private static int tableSize(int size, int n) {
+        if (n < 1) {
+            throw error("bad n-gram length %d", n);
+        }
+        if (Math.pow(size, n) > MAX_TABLE) {
+            throw error("n-gram table too large");
+        }
+        return (int) Math.pow(size, n);
+    }
+
+    /** Return the base-10 log probabilities of n-grams with COUNTS.
+     *  N-grams never seen get the log probability of a hundredth of a
+     *  single occurrence. */
+    private static float[] logProbabilities(long[] counts) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            throw error("no n-grams found");
+        }
+        float[] result = new float[counts.length];
+        float floor = (float) Math.log10(0.01 / total);
+        for (int i = 0; i < counts.length; i += 1) {
+            result[i] = counts[i] == 0 ? floor
+                : (float) Math.log10((double) counts[i] / total);
+        }
+        return result;
+    }
+
+    /** Largest n-gram table allowed. */
+    static final int MAX_TABLE = 1 << 26;
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** N-gram length (1 for index of coincidence). */
+    private final int _n;
+
+    /** Log probability of each n-gram, or null for index of
+     *  coincidence. */
+    private final float[] _logProb;
+
+    /** Letter counts for index of coincidence. */
+    private final int[] _counts;
+}
@@ -0,0 +1,137 @@
+package enigma;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** Converts long stretches of message text by splitting them into
+ *  segments that are converted concurrently on a ForkJoinPool.  Each
+ *  segment gets its own copy of the machine, advanced (see
+ *  Machine.advance) to the number of alphabet characters that precede
+ *  the segment, so the result is the same as converting sequentially.
+ *  @author Roland Li
+ */
+class ParallelConverter {
+
+    /** A converter running on POOL that converts stretches shorter than
+     *  THRESHOLD characters sequentially and splits longer ones into
+     *  segments of at least THRESHOLD / 2 characters. */
+    ParallelConverter(ForkJoinPool pool, int threshold) {
+        _pool = pool;
+        _threshold = threshold;
+        _segment = Math.max(1, threshold / 2);
+    }
+
+    /** Convert the LEN characters of BUF starting at OFF with MACHINE,
+     *  exactly as MACHINE.convert(BUF, OFF, LEN, BUF) would, leaving
+     *  MACHINE in the same state.  Returns the number of characters
+     *  stored. */
+    int convert(Machine machine, char[] buf, int off, int len) {
+        if (len < _threshold) {
+            return machine.convert(buf, off, len, buf);
+        }
+        int segments = Math.min((len + _segment - 1) / _segment,
+                                _pool.getParallelism() * SEGMENTS_PER_WORKER);
+        int[] bounds = new int[segments + 1];
+        for (int i = 0; i <= segments; i += 1) {
+            bounds[i] = off + (int) ((long) len * i / segments);
+        }
+        int[] counts = new int[segments];
+        _pool.invoke(new SegmentTask(null, machine.alphabet(), buf,
+                                     bounds, counts, null, 0, segments));
+        long[] before = new long[segments];
+        long total = 0;
+        for (int i = 0; i < segments; i += 1) {
+            before[i] = total;
+            total += counts[i];
+        }
+        _pool.invoke(new SegmentTask(machine, machine.alphabet(), buf,
+                                     bounds, counts, before, 0, segments));
+        for (int i = 0; i < segments; i += 1) {
+            System.arraycopy(buf, bounds[i], buf, off + (int) before[i],
+                             counts[i]);
+        }
+        machine.advance(total);
+        return (int) total;
+    }
+
+    /** A task handling segments LO .. HI-1 of a stretch of text.  Without
+     *  a machine, it moves the upper-cased alphabet characters of each
+     *  segment to the segment's start and records how many there are.
+     *  With one, it converts those characters in place using a copy of
+     *  the machine advanced past the characters before the segment. */
+    private static class SegmentTask extends RecursiveAction {
+
+        /** A task for segments LO .. HI-1 of BUF, whose boundaries are
+         *  BOUNDS, with alphabet ALPHA.  COUNTS holds the number of
+         *  alphabet characters in each segment, and BEFORE the number
+         *  preceding each segment; MACHINE and BEFORE are null in the
+         *  counting pass. */
+        SegmentTask(Machine machine, Alphabet alpha, char[] buf,
+                    int[] bounds, int[] counts, long[] before,
+                    int lo, int hi) {
+            _machine = machine;
+            _alpha = alpha;
+            _buf = buf;
+            _bounds = bounds;
+            _counts = counts;
+            _before = before;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo > 1) {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new SegmentTask(_machine, _alpha, _buf, _bounds,
+                                          _counts, _before, _lo, mid),
+                          new SegmentTask(_machine, _alpha, _buf, _bounds,
+                                          _counts, _before, mid, _hi));
+            } else if (_machine == null) {
+                int k = _bounds[_lo];
+                for (int i = _bounds[_lo]; i < _bounds[_lo + 1]; i += 1) {
+                    char letter = Character.toUpperCase(_buf[i]);
+                    if (_alpha.contains(letter)) {
+                        _buf[k] = letter;
+                        k += 1;
+                    }
+                }
+                _counts[_lo] = k - _bounds[_lo];
+            } else {
+                Machine mach = _machine.copy();
+                mach.advance(_before[_lo]);
+                mach.convert(_buf, _bounds[_lo], _counts[_lo], _buf);
+            }
+        }
+
+        /** Version of the serialized form (tasks are never serialized). */
+        private static final long serialVersionUID = 1L;
+
+        /** Machine to copy, or null when counting. */
+        private final Machine _machine;
+        /** Alphabet of the text. */
+        private final Alphabet _alpha;
+        /** The text. */
+        private final char[] _buf;
+        /** Segment boundaries. */
+        private final int[] _bounds;
+        /** Alphabet characters per segment. */
+        private final int[] _counts;
+        /** Alphabet characters before each segment. */
+        private final long[] _before;
+        /** Range of segments handled. */
+        private final int _lo, _hi;
+    }
+
+    /** Number of segments per pool worker, for load balance. */
+    private static final int SEGMENTS_PER_WORKER = 4;
+
+    /** Pool on which segments are converted. */
+    private final ForkJoinPool _pool;
+
+    /** Length below which text is converted sequentially. */
+    private final int _threshold;
+
+    /** Minimum length of a segment. */
+    private final int _segment;
+}
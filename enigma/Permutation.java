@@ -16,12 +16,24 @@ class Permutation {
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
         _cycles = cycles;
+        compile();
+    }
+
+    /** A permutation of ALPHABET whose tables are FORWARD and INVERSE, as
+     *  returned by forwardTable() and inverseTable().  Its cycles are
+     *  derived from FORWARD when first needed. */
+    Permutation(int[] forward, int[] inverse, Alphabet alphabet) {
+        _alphabet = alphabet;
+        _forward = forward;
+        _inverse = inverse;
+        _version = 1;
     }
 
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
      *  c0c1...cm. */
     void addCycle(String cycle) {
-        _cycles = _cycles + "(" + cycle + ")";
+        _cycles = cycles() + "(" + cycle + ")";
+        compile();
     }
 
     /** Return the value of P modulo the size of this permutation. */
@@ -41,64 +53,30 @@ class Permutation {
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        char charofp = _alphabet.toChar(wrap(p));
-        int indexincycle = _cycles.indexOf(charofp);
-        if (indexincycle == -1) {
-            return p;
-        } else if (_cycles.charAt(indexincycle + 1) == ')') {
-            while (_cycles.charAt(indexincycle) != '(') {
-                indexincycle--;
-            } char chartoindex = _cycles.charAt(indexincycle + 1);
-            return _alphabet.toInt(chartoindex);
-        }
-        char chartoindex = _cycles.charAt(indexincycle + 1);
-        return _alphabet.toInt(chartoindex);
+        return _forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        char charofc = _alphabet.toChar(wrap(c));
-        int indexincycle = _cycles.indexOf(charofc);
-        if (indexincycle == -1) {
-            return c;
-        } else if (_cycles.charAt(indexincycle - 1) == '(') {
-            while (_cycles.charAt(indexincycle) != ')') {
-                indexincycle++;
-            } char chartoindex = _cycles.charAt(indexincycle - 1);
-            return _alphabet.toInt(chartoindex);
-        }
-        char chartoindex = _cycles.charAt(indexincycle - 1);
-        return _alphabet.toInt(chartoindex);
+        return _inverse[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
      *  in ALPHABET, and converting the result to a character of ALPHABET. */
     char permute(char p) {
-        int indexincycle = _cycles.indexOf(p);
-        if (indexincycle == -1) {
+        if (!_alphabet.contains(p)) {
             return p;
-        } else if (_cycles.charAt(indexincycle + 1) == ')') {
-            while (_cycles.charAt(indexincycle) != '(') {
-                indexincycle--;
-            } return _cycles.charAt(indexincycle + 1);
         }
-        return _cycles.charAt(indexincycle + 1);
-
-
+        return _alphabet.toChar(_forward[_alphabet.toInt(p)]);
     }
 
     /** Return the result of applying the inverse of this permutation to C. */
     int invert(char c) {
-        int indexincycle = _cycles.indexOf(c);
-        if (indexincycle == -1) {
+        if (!_alphabet.contains(c)) {
             return c;
-        } else if (_cycles.charAt(indexincycle - 1) == '(') {
-            while (_cycles.charAt(indexincycle) != ')') {
-                indexincycle++;
-            } return _cycles.charAt(indexincycle - 1);
         }
-        return _cycles.charAt(indexincycle - 1);
+        return _alphabet.toChar(_inverse[_alphabet.toInt(c)]);
     }
 
     /** Return the alphabet used to initialize this Permutation. */
@@ -108,23 +86,112 @@ class Permutation {
 
     /** Return the cycles. */
     String cycles() {
+        if (_cycles == null) {
+            StringBuilder cycles = new StringBuilder();
+            boolean[] seen = new boolean[_forward.length];
+            for (int i = 0; i < _forward.length; i += 1) {
+                if (!seen[i] && _forward[i] != i) {
+                    cycles.append('(');
+                    for (int c = i; !seen[c]; c = _forward[c]) {
+                        seen[c] = true;
+                        cycles.append(_alphabet.toChar(c));
+                    }
+                    cycles.append(')');
+                }
+            }
+            _cycles = cycles.toString();
+        }
         return _cycles;
     }
 
     /** Set the cycles of the permutation to CYCLE. */
     void setCycles(String cycle) {
         _cycles = cycle;
+        compile();
+    }
+
+    /** Return the table mapping each index to its image under this
+     *  permutation.  The table is rebuilt, not updated, when my cycles
+     *  change, so callers may hold on to it as a snapshot. */
+    int[] forwardTable() {
+        return _forward;
+    }
+
+    /** Return the table mapping each index to its image under the
+     *  inverse of this permutation (see forwardTable()). */
+    int[] inverseTable() {
+        return _inverse;
+    }
+
+    /** Return a count that changes every time my cycles change. */
+    int version() {
+        return _version;
     }
 
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        int i = 0;
-        while (i < size()) {
-            if (permute(_alphabet.toChar(i)) == _alphabet.toChar(i)) {
+        for (int i = 0; i < _forward.length; i += 1) {
+            if (_forward[i] == i) {
                 return false;
             }
-        } return true;
+        }
+        return true;
+    }
+
+    /** Rebuild _forward and _inverse from _cycles.  When a character
+     *  appears in more than one cycle, its first occurrence determines
+     *  both its image and its preimage. */
+    private void compile() {
+        int n = size();
+        int[] forward = new int[n];
+        int[] inverse = new int[n];
+        boolean[] mapped = new boolean[n];
+        boolean[] hit = new boolean[n];
+        int first, prev;
+        first = prev = -1;
+        for (int i = 0; i < _cycles.length(); i += 1) {
+            char ch = _cycles.charAt(i);
+            if (ch == '(' || ch == ')') {
+                if (prev >= 0) {
+                    link(prev, first, forward, inverse, mapped, hit);
+                }
+                first = prev = -1;
+            } else if (!Character.isWhitespace(ch)) {
+                int c = _alphabet.toInt(ch);
+                if (prev < 0) {
+                    first = c;
+                } else {
+                    link(prev, c, forward, inverse, mapped, hit);
+                }
+                prev = c;
+            }
+        }
+        for (int i = 0; i < n; i += 1) {
+            if (!mapped[i]) {
+                forward[i] = i;
+            }
+            if (!hit[i]) {
+                inverse[i] = i;
+            }
+        }
+        _forward = forward;
+        _inverse = inverse;
+        _version += 1;
+    }
+
+    /** Record FROM -> TO in FORWARD and INVERSE unless FROM already has
+     *  an image (MAPPED) or TO already has a preimage (HIT). */
+    private static void link(int from, int to, int[] forward, int[] inverse,
+                             boolean[] mapped, boolean[] hit) {
+        if (!mapped[from]) {
+            forward[from] = to;
+            mapped[from] = true;
+        }
+        if (!hit[to]) {
+            inverse[to] = from;
+            hit[to] = true;
+        }
     }
 
     /** Alphabet of this permutation. */
@@ -133,4 +200,13 @@ class Permutation {
     /** Cycles of this permutation. */
     private String _cycles;
 
+    /** Image of each index under this permutation. */
+    private int[] _forward;
+
+    /** Image of each index under the inverse of this permutation. */
+    private int[] _inverse;
+
+    /** Number of times _forward and _inverse have been rebuilt. */
+    private int _version;
+
 }
@@ -51,4 +51,23 @@ public class PermutationTest {
         checkPerm("identity", UPPER_STRING, UPPER_STRING);
     }
 
+    @Test
+    public void checkNavalTransform() {
+        perm = new Permutation(NAVALA.get("I"), UPPER);
+        checkPerm("naval I", UPPER_STRING, NAVALA_MAP.get("I"));
+        assertFalse("naval I has fixed point", perm.derangement());
+    }
+
+    @Test
+    public void checkCycleChanges() {
+        perm = new Permutation("(AB)", UPPER);
+        perm.addCycle("CD");
+        assertEquals(3, perm.permute(2));
+        assertEquals(2, perm.invert(3));
+        perm.setCycles(NAVALA.get("II"));
+        checkPerm("reset to naval II", UPPER_STRING, NAVALA_MAP.get("II"));
+        perm.setCycles("(ABCDEFGHIJKLMNOPQRSTUVWXYZ)");
+        assertTrue("26-cycle is a derangement", perm.derangement());
+    }
+
 }
@@ -0,0 +1,36 @@
+package enigma;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** A JDK Flight Recorder event recording one timed phase of a run (see
+ *  Metrics).  Its start and duration are those of the phase, so
+ *  recordings may filter it with the usual threshold setting.  It is
+ *  emitted whenever a recording enables it (as recordings do by
+ *  default), whether or not Metrics is enabled.
+ *  @author Roland Li
+ */
+@Name("enigma.Phase")
+@Label("Enigma Phase")
+@Category("Enigma")
+@Description("Reading the configuration, applying a setting line, "
+             + "converting or printing message text")
+@StackTrace(false)
+class PhaseEvent extends jdk.jfr.Event {
+
+    /** Name of the phase (see MetricsMXBean.getPhases). */
+    @Label("Phase")
+    String phase;
+
+    /** Number of characters handled, or 1 for phases that are not
+     *  measured in characters. */
+    @Label("Count")
+    long count;
+
+    /** Value of System.nanoTime() at the start of the phase, for
+     *  Metrics' histograms; not recorded. */
+    transient long startNanos;
+}
@@ -0,0 +1,122 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** A mutable plugboard: an involution on the indices of an alphabet, kept
+ *  as a table of each letter's partner (itself if unplugged), so that
+ *  connecting or disconnecting a pair takes constant time.  Used where
+ *  many plugboards are tried in turn, as by PlugboardSolver; a
+ *  Permutation for Machine.setPlugboard is built only when needed.
+ *  @author Roland Li
+ */
+class Plugboard {
+
+    /** An empty plugboard for ALPHABET. */
+    Plugboard(Alphabet alphabet) {
+        _alphabet = alphabet;
+        _wire = new int[alphabet.size()];
+        for (int i = 0; i < _wire.length; i += 1) {
+            _wire[i] = i;
+        }
+    }
+
+    /** A plugboard for ALPHABET with the pairs given by CYCLES, which
+     *  must consist of cycles of two characters, as on a setting line. */
+    Plugboard(Alphabet alphabet, String cycles) {
+        this(alphabet);
+        int[] pair = new int[2];
+        int k = 0;
+        for (int i = 0; i < cycles.length(); i += 1) {
+            char c = cycles.charAt(i);
+            if (c == '(') {
+                k = 0;
+            } else if (c == ')') {
+                if (k != 2) {
+                    throw error("plugboard cycles must be pairs");
+                }
+                connect(pair[0], pair[1]);
+            } else if (!Character.isWhitespace(c)) {
+                if (k == 2) {
+                    throw error("plugboard cycles must be pairs");
+                }
+                pair[k] = alphabet.toInt(c);
+                k += 1;
+            }
+        }
+    }
+
+    /** A copy of OTHER. */
+    Plugboard(Plugboard other) {
+        _alphabet = other._alphabet;
+        _wire = other._wire.clone();
+        _pairs = other._pairs;
+    }
+
+    /** Return the letter (as an index) plugged to C, or C if none. */
+    int partner(int c) {
+        return _wire[c];
+    }
+
+    /** Return the number of pairs plugged. */
+    int pairs() {
+        return _pairs;
+    }
+
+    /** Plug A to B, first unplugging each from any other letter.  If A
+     *  is B, just unplugs A. */
+    void connect(int a, int b) {
+        disconnect(a);
+        disconnect(b);
+        if (a != b) {
+            _wire[a] = b;
+            _wire[b] = a;
+            _pairs += 1;
+        }
+    }
+
+    /** Unplug C and its partner, if any. */
+    void disconnect(int c) {
+        int p = _wire[c];
+        if (p != c) {
+            _wire[c] = c;
+            _wire[p] = p;
+            _pairs -= 1;
+        }
+    }
+
+    /** Return my table of partners, indexed by letter.  The table is
+     *  mine, not a copy, and changes as I do. */
+    int[] wiring() {
+        return _wire;
+    }
+
+    /** Return me as a Permutation, as for Machine.setPlugboard. */
+    Permutation permutation() {
+        return new Permutation(toString(), _alphabet);
+    }
+
+    /** Return my pairs as cycles, in the form used on setting lines. */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        for (int c = 0; c < _wire.length; c += 1) {
+            if (c < _wire[c]) {
+                if (result.length() > 0) {
+                    result.append(' ');
+                }
+                result.append('(').append(_alphabet.toChar(c))
+                    .append(_alphabet.toChar(_wire[c])).append(')');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Alphabet of my letters. */
+    private final Alphabet _alphabet;
+
+    /** Partner of each letter. */
+    private final int[] _wire;
+
+    /** Number of pairs plugged. */
+    private int _pairs;
+}
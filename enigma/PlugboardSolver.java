@@ -0,0 +1,441 @@
+package enigma;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** Recovers plugboards from ciphertext alone, given candidate rotor
+ *  orders and starting positions (for example, keys found by Bombe).
+ *  For each candidate it hill-climbs over plugboards: starting from some
+ *  plugboard, it repeatedly tries plugging, unplugging, or replugging each
+ *  pair of letters, keeping any change that improves the NgramScorer
+ *  score of the resulting decryption, until no change does.  Several
+ *  climbs (restarts) from different random plugboards are run for each
+ *  candidate, in parallel.
+ *
+ *  With the rotors fixed, the decryption of ciphertext letter C at place
+ *  I is X(S_I(X(C))), where X is the plugboard and S_I the rotors'
+ *  substitution at that place.  The solver computes the S_I once per
+ *  candidate from the machine's compiled tables, so that trying a
+ *  plugboard is three table lookups per letter and no allocation.
+ *  @author Roland Li
+ */
+class PlugboardSolver {
+
+    /** Solve for plugboards as described by ARGS:
+     *      [--threads=N] [--restarts=N] [--ngrams=FILE | --sample=FILE]
+     *      CONFIG CIPHERTEXT [CANDIDATES]
+     *  CONFIG is a configuration file, as for Main.  CANDIDATES is a file
+     *  of setting lines (such as the output of Bombe), each giving rotors
+     *  and settings and perhaps a starting plugboard; without it, they
+     *  are read from the standard input.  --ngrams gives a table of
+     *  n-gram counts to score with (see NgramScorer.load); --sample gives
+     *  a text whose quadgrams are used instead.  Without either, scores
+     *  by index of coincidence.  Prints the best key found for each
+     *  candidate, best first, each followed by its score and the start
+     *  of its decryption. */
+    public static void main(String... args) {
+        try {
+            int threads = Runtime.getRuntime().availableProcessors();
+            int restarts = DEFAULT_RESTARTS;
+            String ngrams = null;
+            String sample = null;
+            ArrayList<String> operands = new ArrayList<>();
+            for (String arg : args) {
+                if (arg.startsWith("--threads=")) {
+                    threads = parseCount(arg.substring(10), arg);
+                } else if (arg.startsWith("--restarts=")) {
+                    restarts = parseCount(arg.substring(11), arg);
+                } else if (arg.startsWith("--ngrams=")) {
+                    ngrams = arg.substring(9);
+                } else if (arg.startsWith("--sample=")) {
+                    sample = arg.substring(9);
+                } else if (arg.startsWith("--")) {
+                    throw error("unknown option %s", arg);
+                } else {
+                    operands.add(arg);
+                }
+            }
+            if (operands.size() < 2 || operands.size() > 3) {
+                throw error("Usage: java enigma.PlugboardSolver "
+                            + "[--threads=N] [--restarts=N] "
+                            + "[--ngrams=FILE | --sample=FILE] CONFIG "
+                            + "CIPHERTEXT [CANDIDATES]");
+            }
+            Machine machine = new ConfigParser(
+                new String(Files.readAllBytes(Paths.get(operands.get(0))))
+                .toCharArray()).parse();
+            Alphabet alpha = machine.alphabet();
+            NgramScorer scorer;
+            if (ngrams != null) {
+                try (Reader in = new FileReader(ngrams)) {
+                    scorer = NgramScorer.load(alpha, in);
+                }
+            } else if (sample != null) {
+                scorer = NgramScorer.fromText(
+                    alpha, new String(Files.readAllBytes(Paths.get(sample))),
+                    SAMPLE_N);
+            } else {
+                scorer = NgramScorer.ioc(alpha);
+            }
+            List<Bombe.Key> candidates;
+            if (operands.size() > 2) {
+                try (Reader in = new FileReader(operands.get(2))) {
+                    candidates = readCandidates(in, machine.numRotors());
+                }
+            } else {
+                candidates = readCandidates(new InputStreamReader(System.in),
+                                            machine.numRotors());
+            }
+            PlugboardSolver solver =
+                new PlugboardSolver(machine, scorer, threads);
+            for (Solution solution
+                     : solver.solve(operands.get(1), candidates, restarts)) {
+                System.out.println(solution.key());
+                String text = solution.plaintext();
+                System.out.printf("    %.4f %s%n", solution.score(),
+                                  text.substring(0, Math.min(text.length(),
+                                                             PREVIEW)));
+            }
+            return;
+        } catch (IOException excp) {
+            System.err.printf("Error: could not read %s%n",
+                              excp.getMessage());
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** The best key found for a candidate. */
+    static class Solution {
+
+        /** A solution with key KEY, whose decryption PLAINTEXT has score
+         *  SCORE. */
+        Solution(Bombe.Key key, double score, String plaintext) {
+            _key = key;
+            _score = score;
+            _plaintext = plaintext;
+        }
+
+        /** Return my key, including its plugboard. */
+        Bombe.Key key() {
+            return _key;
+        }
+
+        /** Return the score of my decryption. */
+        double score() {
+            return _score;
+        }
+
+        /** Return the decryption of the ciphertext under my key. */
+        String plaintext() {
+            return _plaintext;
+        }
+
+        /** The key. */
+        private final Bombe.Key _key;
+        /** Its score. */
+        private final double _score;
+        /** Its decryption. */
+        private final String _plaintext;
+    }
+
+    /** A solver for machines like MACHINE (with its alphabet and rotors)
+     *  that scores decryptions with SCORER (and copies of it) and runs on
+     *  THREADS threads. */
+    PlugboardSolver(Machine machine, NgramScorer scorer, int threads) {
+        _machine = machine;
+        _scorer = scorer;
+        _threads = threads;
+    }
+
+    /** Return the best key found for each of CANDIDATES as a decryption
+     *  of CIPHERTEXT, best first, trying RESTARTS climbs per candidate.
+     *  The first climb for each candidate starts from its plugboard and
+     *  the others from random ones.  Characters of CIPHERTEXT that are
+     *  not in the alphabet are ignored. */
+    List<Solution> solve(String ciphertext, List<Bombe.Key> candidates,
+                         int restarts) {
+        int[] cipher = indices(ciphertext);
+        ExecutorService pool = Executors.newFixedThreadPool(_threads);
+        ArrayList<List<Future<Climb>>> tasks = new ArrayList<>();
+        for (Bombe.Key candidate : candidates) {
+            int[] scrambled = scrambled(candidate, cipher.length);
+            ArrayList<Future<Climb>> climbs = new ArrayList<>();
+            for (int r = 0; r < restarts; r += 1) {
+                Plugboard start;
+                if (r == 0) {
+                    start = new Plugboard(_machine.alphabet(),
+                                          candidate.plugboard());
+                } else {
+                    start = randomPlugboard(new Random(SEED + r));
+                }
+                climbs.add(pool.submit(() -> climb(cipher, scrambled,
+                                                   start)));
+            }
+            tasks.add(climbs);
+        }
+        ArrayList<Solution> result = new ArrayList<>();
+        try {
+            for (int c = 0; c < candidates.size(); c += 1) {
+                Climb best = null;
+                for (Future<Climb> climb : tasks.get(c)) {
+                    Climb done = climb.get();
+                    if (best == null || done.score > best.score) {
+                        best = done;
+                    }
+                }
+                if (best != null) {
+                    result.add(solution(candidates.get(c), best,
+                                        ciphertext));
+                }
+            }
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof EnigmaException) {
+                throw (EnigmaException) excp.getCause();
+            }
+            throw error("plugboard search failed: %s", excp.getCause());
+        } catch (InterruptedException excp) {
+            throw error("plugboard search interrupted");
+        } finally {
+            pool.shutdownNow();
+        }
+        result.sort(Comparator.comparingDouble(Solution::score).reversed());
+        return result;
+    }
+
+    /** The result of one climb: a plugboard and its score. */
+    private static class Climb {
+        /** A climb ending at BOARD with score SCORE. */
+        Climb(Plugboard board, double score) {
+            this.board = board;
+            this.score = score;
+        }
+        /** Final plugboard. */
+        private final Plugboard board;
+        /** Its score. */
+        private final double score;
+    }
+
+    /** Hill-climb from plugboard BOARD, for ciphertext CIPHER whose
+     *  rotor substitutions are SCRAMBLED (see scrambled), returning the
+     *  plugboard reached and its score.  When scoring by n-grams, first
+     *  climbs by index of coincidence, which is less easily trapped far
+     *  from the answer, and then refines the result by n-grams. */
+    private Climb climb(int[] cipher, int[] scrambled, Plugboard board) {
+        int[] plain = new int[cipher.length];
+        if (_scorer.n() > 1) {
+            climb(cipher, scrambled, board, plain,
+                  NgramScorer.ioc(_machine.alphabet()));
+        }
+        NgramScorer scorer = new NgramScorer(_scorer);
+        return new Climb(board,
+                         climb(cipher, scrambled, board, plain, scorer));
+    }
+
+    /** Hill-climb from plugboard BOARD, which is left at the plugboard
+     *  reached, for ciphertext CIPHER whose rotor substitutions are
+     *  SCRAMBLED, scoring with SCORER and using PLAIN to hold
+     *  decryptions.  Returns the final score. */
+    private double climb(int[] cipher, int[] scrambled, Plugboard board,
+                         int[] plain, NgramScorer scorer) {
+        int size = _machine.alphabet().size();
+        double best = score(cipher, scrambled, board, plain, scorer);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int a = 0; a < size; a += 1) {
+                for (int b = a; b < size; b += 1) {
+                    int pa = board.partner(a);
+                    int pb = board.partner(b);
+                    if (a == b && pa == a) {
+                        continue;
+                    }
+                    if (pa == b) {
+                        board.disconnect(a);
+                    } else {
+                        board.connect(a, b);
+                    }
+                    double score =
+                        score(cipher, scrambled, board, plain, scorer);
+                    if (score > best) {
+                        best = score;
+                        improved = true;
+                    } else {
+                        board.disconnect(a);
+                        board.disconnect(b);
+                        if (pa != a) {
+                            board.connect(a, pa);
+                        }
+                        if (pb != b && pb != a) {
+                            board.connect(b, pb);
+                        }
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /** Return SCORER's score for the decryption of CIPHER with rotor
+     *  substitutions SCRAMBLED and plugboard BOARD, using PLAIN to hold
+     *  the decryption. */
+    private static double score(int[] cipher, int[] scrambled,
+                                Plugboard board, int[] plain,
+                                NgramScorer scorer) {
+        int[] wire = board.wiring();
+        int size = wire.length;
+        for (int i = 0, row = 0; i < cipher.length; i += 1, row += size) {
+            plain[i] = wire[scrambled[row + wire[cipher[i]]]];
+        }
+        return scorer.score(plain, cipher.length);
+    }
+
+    /** Return the rotor substitutions for the first LEN characters of a
+     *  message under the rotors and settings of KEY, as a table whose
+     *  entry I * size + C is the conversion of C at place I. */
+    private int[] scrambled(Bombe.Key key, int len) {
+        Machine machine = _machine.copy();
+        machine.insertRotors(key.rotors());
+        machine.setRotors(key.setting());
+        int size = _machine.alphabet().size();
+        int[][] bases = new int[len][machine.numRotors()];
+        machine.recordSteps(bases);
+        int[] result = new int[len * size];
+        for (int i = 0; i < len; i += 1) {
+            for (int c = 0; c < size; c += 1) {
+                result[i * size + c] = machine.scramble(c, bases[i]);
+            }
+        }
+        return result;
+    }
+
+    /** Return the solution for CANDIDATE given by CLIMB, decrypting
+     *  CIPHERTEXT. */
+    private Solution solution(Bombe.Key candidate, Climb climb,
+                              String ciphertext) {
+        Machine machine = _machine.copy();
+        machine.insertRotors(candidate.rotors());
+        machine.setRotors(candidate.setting());
+        machine.setPlugboard(climb.board.permutation());
+        return new Solution(new Bombe.Key(candidate.rotors(),
+                                          candidate.setting(),
+                                          climb.board.toString()),
+                            climb.score, machine.convert(ciphertext));
+    }
+
+    /** Return a plugboard with a random number of random pairs, chosen
+     *  with RANDOM. */
+    private Plugboard randomPlugboard(Random random) {
+        int size = _machine.alphabet().size();
+        Plugboard board = new Plugboard(_machine.alphabet());
+        int pairs = random.nextInt(Math.min(MAX_RANDOM_PAIRS, size / 2) + 1);
+        while (board.pairs() < pairs) {
+            int a = random.nextInt(size);
+            int b = random.nextInt(size);
+            if (board.partner(a) == a && board.partner(b) == b) {
+                board.connect(a, b);
+            }
+        }
+        return board;
+    }
+
+    /** Return the indices of the characters of TEXT, converted to upper
+     *  case, that are in my alphabet. */
+    private int[] indices(String text) {
+        Alphabet alpha = _machine.alphabet();
+        int[] result = new int[text.length()];
+        int n = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            char c = Character.toUpperCase(text.charAt(i));
+            if (alpha.contains(c)) {
+                result[n] = alpha.toInt(c);
+                n += 1;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** Return the keys on the setting lines (those starting with "*") of
+     *  SOURCE, for a machine with NUMROTORS rotors. */
+    static List<Bombe.Key> readCandidates(Reader source, int numRotors) {
+        MessageReader lines = new MessageReader(source, BUFFER_SIZE);
+        ArrayList<Bombe.Key> result = new ArrayList<>();
+        while (lines.nextLine()) {
+            String line = lines.restOfLine().trim();
+            if (!line.startsWith("*")) {
+                continue;
+            }
+            String[] tokens = line.substring(1).trim().split("\\s+");
+            if (tokens.length < numRotors + 1) {
+                throw error("Bad setting line: %s", line);
+            }
+            String[] rotors = new String[numRotors];
+            for (int i = 0; i < numRotors; i += 1) {
+                rotors[i] = tokens[i].toUpperCase();
+            }
+            StringBuilder plugboard = new StringBuilder();
+            for (int i = numRotors + 1; i < tokens.length; i += 1) {
+                plugboard.append(tokens[i]);
+            }
+            result.add(new Bombe.Key(rotors, tokens[numRotors],
+                                     plugboard.toString()));
+        }
+        return result;
+    }
+
+    /** Return TEXT, a count given in ARG, as a positive integer. */
+    private static int parseCount(String text, String arg) {
+        try {
+            int result = Integer.parseInt(text);
+            if (result > 0) {
+                return result;
+            }
+        } catch (NumberFormatException excp) {
+            /* Fall through. */
+        }
+        throw error("bad number in %s", arg);
+    }
+
+    /** Default number of climbs per candidate. */
+    static final int DEFAULT_RESTARTS = 8;
+
+    /** N-gram length used with --sample. */
+    static final int SAMPLE_N = 4;
+
+    /** Most pairs on a random starting plugboard. */
+    static final int MAX_RANDOM_PAIRS = 10;
+
+    /** Seed for random starting plugboards, so results are repeatable. */
+    static final long SEED = 0x5EED;
+
+    /** Number of characters of decryption shown by main. */
+    static final int PREVIEW = 60;
+
+    /** Size of the buffer used to read candidates. */
+    static final int BUFFER_SIZE = 1 << 12;
+
+    /** Machine whose alphabet and rotors are used. */
+    private final Machine _machine;
+
+    /** Scorer (copied for each climb). */
+    private final NgramScorer _scorer;
+
+    /** Number of threads. */
+    private final int _threads;
+}
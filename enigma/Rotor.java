@@ -11,7 +11,7 @@ class Rotor {
     Rotor(String name, Permutation perm) {
         _name = name;
         _permutation = perm;
-        _setting = 0;
+        setPosition(0);
     }
 
     /** Return my name. */
@@ -51,27 +51,35 @@ class Rotor {
 
     /** Set setting() to POSN.  */
     void set(int posn) {
-        _setting = posn;
+        setPosition(posn);
     }
 
     /** Set setting() to character CPOSN. */
     void set(char cposn) {
-        _setting = _permutation.alphabet().toInt(cposn);
+        setPosition(_permutation.alphabet().toInt(cposn));
     }
 
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
-        int permutedvalue =
-                _permutation.permute(_permutation.wrap(p + _setting));
-        return _permutation.wrap(permutedvalue - setting());
+        return tables()._forward[_base + p];
     }
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
-        int permutedvalue = _permutation.invert
-                (_permutation.wrap(e + setting()));
-        return _permutation.wrap(permutedvalue - setting());
+        return tables()._backward[_base + e];
+    }
+
+    /** Return my forward conversions for every setting, flattened so that
+     *  the conversion of P at setting S is at index S * size() + P. */
+    int[] forwardTable() {
+        return tables()._forward;
+    }
+
+    /** Return my backward conversions for every setting, laid out as for
+     *  forwardTable(). */
+    int[] backwardTable() {
+        return tables()._backward;
     }
 
     /** Returns true iff I am positioned to allow the rotor to my left
@@ -96,6 +104,70 @@ class Rotor {
     /** The permutation implemented by this rotor in its 0 position. */
     private Permutation _permutation;
 
+    /** Set _setting to POSN and _base to the offset of its row in the
+     *  conversion tables. */
+    private void setPosition(int posn) {
+        _setting = posn;
+        _base = _permutation.wrap(posn) * size();
+    }
+
+    /** Return my conversion tables for the current version of
+     *  _permutation, building them if they are out of date.  Tables are
+     *  immutable once published, so this takes no lock: threads that
+     *  race to build them build identical tables, and any may win. */
+    private Tables tables() {
+        Tables tables = _tables;
+        int version = _permutation.version();
+        if (tables == null || tables._version != version) {
+            tables = buildTables(version);
+            _tables = tables;
+        }
+        return tables;
+    }
+
+    /** Return my conversions at every setting from _permutation, whose
+     *  version is VERSION. */
+    private Tables buildTables(int version) {
+        int n = size();
+        int[] perm = _permutation.forwardTable();
+        int[] inv = _permutation.inverseTable();
+        int[] forward = new int[n * n];
+        int[] backward = new int[n * n];
+        for (int s = 0, row = 0; s < n; s += 1, row += n) {
+            for (int p = 0; p < n; p += 1) {
+                int q = p + s < n ? p + s : p + s - n;
+                int f = perm[q] - s, b = inv[q] - s;
+                forward[row + p] = f < 0 ? f + n : f;
+                backward[row + p] = b < 0 ? b + n : b;
+            }
+        }
+        return new Tables(forward, backward, version);
+    }
+
+    /** Conversion tables built from one version of a permutation. */
+    private static class Tables {
+
+        /** Tables FORWARD and BACKWARD built from version VERSION. */
+        Tables(int[] forward, int[] backward, int version) {
+            _forward = forward;
+            _backward = backward;
+            _version = version;
+        }
+
+        /** Forward conversions at each setting (see forwardTable()). */
+        private final int[] _forward;
+        /** Backward conversions at each setting (see backwardTable()). */
+        private final int[] _backward;
+        /** Version of the permutation they were built from. */
+        private final int _version;
+    }
+
     /** The current setting of the rotor. */
     private int _setting;
+
+    /** Offset of the row for _setting in _forward and _backward. */
+    private int _base;
+
+    /** My conversion tables, or null before they are first needed. */
+    private volatile Tables _tables;
 }
@@ -0,0 +1,254 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static enigma.EnigmaException.*;
+
+/** A long-running server converting messages for one machine
+ *  configuration, so that clients do not pay for JVM startup, reading
+ *  the configuration, and warming up on every run.  It listens on a
+ *  loopback TCP port or a Unix-domain socket and handles each connection
+ *  on its own thread: a virtual thread when the JDK has them, and
+ *  otherwise one from a cached pool.
+ *
+ *  A connection carries any number of requests, one after another.  A
+ *  request is the text of an input file for Main (setting lines and
+ *  message lines), followed by a line containing only ".".  The response
+ *  is what Main would write for that input (message lines grouped in
+ *  fives), or a single line "Error: MESSAGE" if Main would fail,
+ *  followed in either case by a line containing only ".".  In both
+ *  directions, a line of text that starts with "." is sent with an extra
+ *  "." in front (see Client).  Every request starts from a fresh copy of
+ *  the configured machine, so requests are independent, but all share
+ *  the rotors' compiled tables.
+ *  @author Roland Li
+ */
+class Server {
+
+    /** Serve as described by ARGS:
+     *      [--port=N | --socket=PATH] CONFIG
+     *  CONFIG is a configuration file or machine image, as for Main.
+     *  --port listens on loopback port N (default DEFAULT_PORT);
+     *  --socket listens on a Unix-domain socket at PATH instead. */
+    public static void main(String... args) {
+        try {
+            Metrics.enableFromProperty();
+            SocketAddress address =
+                new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                      DEFAULT_PORT);
+            ArrayList<String> operands = new ArrayList<>();
+            for (String arg : args) {
+                if (address(arg) != null) {
+                    address = address(arg);
+                } else if (arg.startsWith("--")) {
+                    throw error("unknown option %s", arg);
+                } else {
+                    operands.add(arg);
+                }
+            }
+            if (operands.size() != 1) {
+                throw error("Usage: java enigma.Server [--port=N | "
+                            + "--socket=PATH] CONFIG");
+            }
+            String config = operands.get(0);
+            Machine machine = MachineImage.isImage(config)
+                ? MachineImage.load(config)
+                : new ConfigParser(new String(Files.readAllBytes(
+                      Paths.get(config))).toCharArray()).parse();
+            Server server = new Server(machine);
+            server.bind(address);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    server.stop();
+                } catch (IOException excp) {
+                    /* Exiting anyway. */
+                }
+            }));
+            System.err.printf("listening on %s%n", server.address());
+            server.serve();
+            return;
+        } catch (IOException | EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the address given by the option OPTION: a loopback TCP
+     *  address for --port=N, or a Unix-domain one for --socket=PATH.
+     *  Returns null if OPTION is neither. */
+    static SocketAddress address(String option) {
+        if (option.startsWith("--port=")) {
+            try {
+                int port = Integer.parseInt(option.substring(7));
+                if (port >= 0 && port <= MAX_PORT) {
+                    return new InetSocketAddress(
+                        InetAddress.getLoopbackAddress(), port);
+                }
+            } catch (NumberFormatException excp) {
+                /* Reported below. */
+            }
+            throw error("bad port in %s", option);
+        } else if (option.startsWith("--socket=")) {
+            return UnixDomainSocketAddress.of(option.substring(9));
+        }
+        return null;
+    }
+
+    /** A server converting messages with copies of MACHINE, which must
+     *  not be changed while I am serving. */
+    Server(Machine machine) {
+        _machine = machine;
+    }
+
+    /** Start listening on ADDRESS (a port of 0 chooses a free one). */
+    void bind(SocketAddress address) throws IOException {
+        _listener = address instanceof UnixDomainSocketAddress
+            ? ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+            : ServerSocketChannel.open();
+        _listener.bind(address, BACKLOG);
+    }
+
+    /** Return the address I am listening on. */
+    SocketAddress address() throws IOException {
+        return _listener.getLocalAddress();
+    }
+
+    /** Accept and handle connections until stop() is called. */
+    void serve() throws IOException {
+        ExecutorService pool = threadPerTaskExecutor();
+        try {
+            while (true) {
+                SocketChannel connection = _listener.accept();
+                pool.execute(() -> handle(connection));
+            }
+        } catch (AsynchronousCloseException excp) {
+            /* stop() was called. */
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Stop listening, making serve() return, and remove my socket file
+     *  if I have one.  Connections being handled are interrupted. */
+    void stop() throws IOException {
+        SocketAddress address = address();
+        _listener.close();
+        if (address instanceof UnixDomainSocketAddress) {
+            Files.deleteIfExists(((UnixDomainSocketAddress) address)
+                                 .getPath());
+        }
+    }
+
+    /** Return an executor running each task on a new virtual thread if
+     *  this JDK has them (Java 21 and later), and otherwise on a thread
+     *  from a cached pool.  Found reflectively so that this class still
+     *  compiles and runs on older JDKs. */
+    static ExecutorService threadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException excp) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /** Handle the requests on CONNECTION until the client closes it. */
+    private void handle(SocketChannel connection) {
+        try (SocketChannel channel = connection) {
+            BufferedReader in = new BufferedReader(
+                Channels.newReader(channel, StandardCharsets.UTF_8));
+            PrintStream out = new PrintStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel)),
+                false, StandardCharsets.UTF_8);
+            StringBuilder request = new StringBuilder();
+            for (String line; (line = in.readLine()) != null;) {
+                if (line.equals(END)) {
+                    respond(request.toString(), out);
+                    out.flush();
+                    request.setLength(0);
+                } else {
+                    request.append(unstuff(line)).append('\n');
+                }
+            }
+        } catch (IOException excp) {
+            /* The client went away; nothing to answer. */
+        }
+    }
+
+    /** Write the response to REQUEST to OUT.  Any exception converting
+     *  REQUEST is answered as an error, leaving the connection open. */
+    private void respond(String request, PrintStream out) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GroupedWriter result =
+            new GroupedWriter(Channels.newChannel(bytes),
+                              StandardCharsets.UTF_8, RESPONSE_BUFFER_SIZE,
+                              false);
+        try {
+            new Main(_machine.alphabet(), new StringReader(request), result)
+                .convertMessages(_machine.copy());
+            result.flush();
+            bytes.toString(StandardCharsets.UTF_8).lines().forEach(line -> {
+                out.print(stuff(line));
+                out.print('\n');
+            });
+        } catch (EnigmaException excp) {
+            out.printf("Error: %s\n", excp.getMessage());
+        } catch (RuntimeException excp) {
+            out.printf("Error: %s\n", excp);
+        }
+        out.print(END);
+        out.print('\n');
+    }
+
+    /** Return LINE as sent: with an extra "." in front if it starts with
+     *  ".". */
+    static String stuff(String line) {
+        return line.startsWith(".") ? "." + line : line;
+    }
+
+    /** Return LINE as received: without the "." added by stuff. */
+    static String unstuff(String line) {
+        return line.startsWith(".") ? line.substring(1) : line;
+    }
+
+    /** Line ending a request or response. */
+    static final String END = ".";
+
+    /** Size of the buffer into which responses are formatted. */
+    static final int RESPONSE_BUFFER_SIZE = 1 << 13;
+
+    /** Port listened on by default. */
+    static final int DEFAULT_PORT = 7461;
+
+    /** Largest TCP port number. */
+    static final int MAX_PORT = 0xffff;
+
+    /** Number of pending connections allowed. */
+    static final int BACKLOG = 256;
+
+    /** Machine copied for each request. */
+    private final Machine _machine;
+
+    /** Socket accepting connections. */
+    private ServerSocketChannel _listener;
+}
@@ -0,0 +1,230 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import static enigma.EnigmaException.*;
+
+/** An Alphabet consisting of the characters of an arbitrary string of
+ *  symbols, in order, with constant-time lookups in both directions.
+ *  Symbols are found from their indices in an array.  Indices are found
+ *  from symbols through a dense table covering the span from the
+ *  smallest symbol to the largest when that span is not much larger
+ *  than the alphabet, and otherwise through a compact perfect hash
+ *  table built by hash and displace: each symbol's first hash selects a
+ *  bucket, and each bucket has a seed, chosen when the table is built,
+ *  for a second hash that sends the bucket's symbols to free slots.
+ *  If a symbol is repeated, its first occurrence is the one found.
+ *  @author Roland Li
+ */
+class SymbolAlphabet extends Alphabet {
+
+    /** An alphabet consisting of the characters of SYMBOLS in order. */
+    SymbolAlphabet(String symbols) {
+        this(symbols, "symbol");
+    }
+
+    /** An alphabet consisting of the characters of SYMBOLS in order,
+     *  whose errors call its members KIND (as "KIND out of range"). */
+    SymbolAlphabet(String symbols, String kind) {
+        _symbols = symbols.toCharArray();
+        _kind = kind;
+        if (_symbols.length == 0) {
+            throw error("empty alphabet");
+        }
+        char min = Character.MAX_VALUE, max = Character.MIN_VALUE;
+        for (char c : _symbols) {
+            min = (char) Math.min(min, c);
+            max = (char) Math.max(max, c);
+        }
+        _min = min;
+        int span = max - min + 1;
+        if (span > Math.max(DENSE_MIN, DENSE_FACTOR * _symbols.length)
+            && buildHash()) {
+            _dense = null;
+        } else {
+            _dense = new int[span];
+            Arrays.fill(_dense, -1);
+            for (int i = _symbols.length - 1; i >= 0; i -= 1) {
+                _dense[_symbols[i] - _min] = i;
+            }
+        }
+    }
+
+    @Override
+    final int size() {
+        return _symbols.length;
+    }
+
+    @Override
+    final boolean contains(char ch) {
+        return indexOf(ch) >= 0;
+    }
+
+    @Override
+    final char toChar(int index) {
+        if (index < 0 || index >= _symbols.length) {
+            throw error("%s index out of range", _kind);
+        }
+        return _symbols[index];
+    }
+
+    @Override
+    final int toInt(char ch) {
+        int result = indexOf(ch);
+        if (result < 0) {
+            throw error("%s out of range", _kind);
+        }
+        return result;
+    }
+
+    /** Return the index of CH, or -1 if it is not in this alphabet. */
+    private int indexOf(char ch) {
+        if (_dense != null) {
+            int k = ch - _min;
+            return k >= 0 && k < _dense.length ? _dense[k] : -1;
+        }
+        int seed = _seeds[hash(ch, 0) & (_seeds.length - 1)];
+        int entry = _slots[hash(ch, seed) & (_slots.length - 1)];
+        return entry >= 0 && (entry & CHAR_MASK) == ch ? entry >>> 16 : -1;
+    }
+
+    /** Build _seeds and _slots, the perfect hash of my distinct symbols.
+     *  Return false if no table of at most MAX_SLOTS slots was found. */
+    private boolean buildHash() {
+        char[] keys = new char[_symbols.length];
+        int[] indices = new int[_symbols.length];
+        BitSet seen = new BitSet();
+        int n = 0;
+        for (int i = 0; i < _symbols.length; i += 1) {
+            if (!seen.get(_symbols[i])) {
+                seen.set(_symbols[i]);
+                keys[n] = _symbols[i];
+                indices[n] = i;
+                n += 1;
+            }
+        }
+        for (int slots = Integer.highestOneBit(n) << 1; slots <= MAX_SLOTS;
+             slots <<= 1) {
+            if (place(keys, indices, n, slots)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Try to build a perfect hash with SLOTS slots of the N symbols
+     *  KEYS, whose indices are INDICES, returning true iff successful.
+     *  Buckets are placed from the fullest down, each with the first
+     *  seed under which all of its symbols land in distinct free slots. */
+    private boolean place(char[] keys, int[] indices, int n, int slots) {
+        int buckets = Math.max(1, slots / BUCKET_LOAD);
+        int[] start = new int[buckets + 1];
+        for (int i = 0; i < n; i += 1) {
+            start[(hash(keys[i], 0) & (buckets - 1)) + 1] += 1;
+        }
+        Integer[] order = new Integer[buckets];
+        for (int b = 0; b < buckets; b += 1) {
+            order[b] = b;
+        }
+        Arrays.sort(order, (a, b) -> start[b + 1] - start[a + 1]);
+        for (int b = 0; b < buckets; b += 1) {
+            start[b + 1] += start[b];
+        }
+        int[] members = new int[n];
+        int[] fill = Arrays.copyOf(start, buckets);
+        for (int i = 0; i < n; i += 1) {
+            int b = hash(keys[i], 0) & (buckets - 1);
+            members[fill[b]] = i;
+            fill[b] += 1;
+        }
+        int[] seeds = new int[buckets];
+        int[] table = new int[slots];
+        Arrays.fill(table, -1);
+        for (int b : order) {
+            int first = start[b], m = start[b + 1] - first;
+            if (m == 0) {
+                continue;
+            }
+            int seed = 1;
+            while (!fits(keys, members, first, m, seed, table)) {
+                seed += 1;
+                if (seed > MAX_SEED) {
+                    return false;
+                }
+            }
+            seeds[b] = seed;
+            for (int j = first; j < first + m; j += 1) {
+                int i = members[j];
+                table[hash(keys[i], seed) & (slots - 1)] =
+                    indices[i] << 16 | keys[i];
+            }
+        }
+        _seeds = seeds;
+        _slots = table;
+        return true;
+    }
+
+    /** Return true iff the M symbols of KEYS whose positions are in
+     *  MEMBERS from FIRST on all hash with SEED to distinct free slots
+     *  of TABLE. */
+    private static boolean fits(char[] keys, int[] members, int first,
+                                int m, int seed, int[] table) {
+        for (int j = first; j < first + m; j += 1) {
+            int slot = hash(keys[members[j]], seed) & (table.length - 1);
+            if (table[slot] != -1) {
+                return false;
+            }
+            for (int k = first; k < j; k += 1) {
+                if ((hash(keys[members[k]], seed) & (table.length - 1))
+                    == slot) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Return a hash of CH varying with SEED. */
+    private static int hash(char ch, int seed) {
+        int h = ch * 0x9e3779b1 ^ seed * 0x85ebca6b;
+        h ^= h >>> 15;
+        h *= 0x2c1b3c6d;
+        return h ^ h >>> 12;
+    }
+
+    /** Spans of at most this many characters, or DENSE_FACTOR times the
+     *  number of symbols, get a dense table. */
+    private static final int DENSE_MIN = 1024, DENSE_FACTOR = 4;
+
+    /** Average number of symbols in a bucket of the hash. */
+    private static final int BUCKET_LOAD = 4;
+
+    /** Largest hash table and seed tried before falling back to a
+     *  dense table. */
+    private static final int MAX_SLOTS = 1 << 16, MAX_SEED = 1 << 16;
+
+    /** Selects the symbol from a hash table entry. */
+    private static final int CHAR_MASK = 0xffff;
+
+    /** My symbols, in order. */
+    private final char[] _symbols;
+
+    /** What errors call my symbols. */
+    private final String _kind;
+
+    /** Smallest symbol. */
+    private final char _min;
+
+    /** Index of each character from _min on, or -1 for characters not
+     *  in the alphabet; null if hashing. */
+    private final int[] _dense;
+
+    /** Second-hash seed of each bucket of the hash. */
+    private int[] _seeds;
+
+    /** Hash table entries: a symbol's index above the symbol itself, or
+     *  -1 for an empty slot. */
+    private int[] _slots;
+
+}
@@ -0,0 +1,40 @@
+package enigma;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/** A BatchEngine that adds row offsets to characters and gathers their
+ *  conversions from the table a whole vector at a time, using the
+ *  preferred (widest) species of the platform, with a scalar loop for
+ *  the elements left over.  The sums are gathered through ROWS, which
+ *  lookup is allowed to overwrite.  Loaded by BatchEngine.forName only when the
+ *  jdk.incubator.vector module is present.
+ *  @author Roland Li
+ */
+class VectorBatchEngine extends BatchEngine {
+
+    @Override
+    String name() {
+        return "vector";
+    }
+
+    @Override
+    void lookup(int[] table, int[] rows, int[] in, int[] out, int len) {
+        int bound = SPECIES.loopBound(len);
+        int i;
+        for (i = 0; i < bound; i += SPECIES.length()) {
+            IntVector.fromArray(SPECIES, rows, i)
+                .add(IntVector.fromArray(SPECIES, in, i))
+                .intoArray(rows, i);
+            IntVector.fromArray(SPECIES, table, 0, rows, i)
+                .intoArray(out, i);
+        }
+        for (; i < len; i += 1) {
+            out[i] = table[rows[i] + in[i]];
+        }
+    }
+
+    /** Shape of the vectors used. */
+    private static final VectorSpecies<Integer> SPECIES =
+        IntVector.SPECIES_PREFERRED;
+}